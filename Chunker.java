@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/** Splits a stream into content-defined chunks, as in FastCDC.
+ *
+ *  A rolling gear hash is taken over the bytes of each chunk, and the
+ *  chunk ends where the top bits of the hash are all zero.  Since the
+ *  hash depends only on the last 64 bytes seen, an edit moves only the
+ *  cut points near it, and the chunks before and after are the same as
+ *  in the unedited stream, so they deduplicate.  The first MIN_SIZE
+ *  bytes of a chunk are skipped without hashing.  Up to AVG_SIZE, a
+ *  cut needs more zero bits than after it, which keeps chunk sizes
+ *  close to AVG_SIZE, and no chunk is longer than MAX_SIZE.  The stream
+ *  is read through one buffer of twice MAX_SIZE, however long it is.
+ *  @author Ishil Puri
+ */
+class Chunker {
+
+    /** Creates a chunker reading from IN.
+     *  @param in Stream chunked
+     */
+    Chunker(InputStream in) {
+        _in = in;
+    }
+
+    /** @return The next chunk, or null at the end of the stream */
+    byte[] next() throws IOException {
+        fill();
+        if (_pos == _end) {
+            return null;
+        }
+        int n = cut(_buf, _pos, _end - _pos);
+        byte[] chunk = Arrays.copyOfRange(_buf, _pos, _pos + n);
+        _pos += n;
+        return chunk;
+    }
+
+    /** Reads until at least MAX_SIZE bytes are buffered, or the stream
+     *  ends. */
+    private void fill() throws IOException {
+        if (_eof || _end - _pos >= MAX_SIZE) {
+            return;
+        }
+        System.arraycopy(_buf, _pos, _buf, 0, _end - _pos);
+        _end -= _pos;
+        _pos = 0;
+        while (_end < _buf.length) {
+            int n = _in.read(_buf, _end, _buf.length - _end);
+            if (n < 0) {
+                _eof = true;
+                return;
+            }
+            _end += n;
+        }
+    }
+
+    /** @return Length of the chunk starting at OFF in DATA, where the
+     *  next N bytes are all that remain of the stream or at least
+     *  MAX_SIZE of them
+     *  @param data Buffered bytes
+     *  @param off Start of the chunk
+     *  @param n Bytes available from OFF
+     */
+    static int cut(byte[] data, int off, int n) {
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        n = Math.min(n, MAX_SIZE);
+        int normal = Math.min(n, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[data[off + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i += 1) {
+            hash = (hash << 1) + GEAR[data[off + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /** Fewest bytes in a chunk other than the last. */
+    static final int MIN_SIZE = 16 << 10;
+
+    /** Size chunks are cut around. */
+    static final int AVG_SIZE = 64 << 10;
+
+    /** Most bytes in a chunk. */
+    static final int MAX_SIZE = 256 << 10;
+
+    /** Hash bits that must be zero to cut a chunk shorter than
+     *  AVG_SIZE: two more than the log of AVG_SIZE, at the top. */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+
+    /** Hash bits that must be zero to cut a chunk of AVG_SIZE or more:
+     *  two fewer than the log of AVG_SIZE. */
+    private static final long MASK_LARGE = -1L << (64 - 14);
+
+    /** Random value added to the hash for each byte value, made by
+     *  splitmix64 from a fixed seed so that every build cuts the same
+     *  chunks. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long x = 0x6769746c6574L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            x += 0x9e3779b97f4a7c15L;
+            long z = x;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /** Stream chunked. */
+    private final InputStream _in;
+
+    /** Bytes read and not yet returned are _buf[_pos.._end). */
+    private final byte[] _buf = new byte[2 * MAX_SIZE];
+
+    /** Start of the bytes not yet returned. */
+    private int _pos;
+
+    /** End of the bytes read. */
+    private int _end;
+
+    /** Whether the stream has ended. */
+    private boolean _eof;
+}
@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** Thin client for a running Server: forwards its arguments, copies the
+ *  command's output to its own and exits with the command's status.
+ *  With no server running it runs the command itself, like Main.
+ *  Usage: java gitlet.Client ARGS, as for gitlet.Main.
+ *  @author Ishil Puri
+ */
+public class Client {
+
+    /** Runs the command ARGS on the server of the repository in the
+     *  current directory.
+     *  @param args Command and its operands
+     */
+    public static void main(String... args) throws IOException {
+        Path socket = Paths.get(".gitlet", "server.sock");
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException | UnsupportedOperationException excp) {
+            Main.main(args);
+            return;
+        }
+        int status;
+        try (ch) {
+            send(ch, args);
+            status = receive(ch);
+        }
+        System.out.flush();
+        System.exit(status);
+    }
+
+    /** Sends the request for ARGS on CH.
+     *  @param ch Connection to the server
+     *  @param args Command and its operands
+     */
+    private static void send(SocketChannel ch, String[] args)
+        throws IOException {
+        byte[][] raw = new byte[args.length][];
+        int size = 4;
+        for (int i = 0; i < args.length; i += 1) {
+            raw[i] = args[i].getBytes(StandardCharsets.UTF_8);
+            size += 4 + raw[i].length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size).putInt(args.length);
+        for (byte[] arg : raw) {
+            out.putInt(arg.length).put(arg);
+        }
+        out.flip();
+        while (out.hasRemaining()) {
+            ch.write(out);
+        }
+    }
+
+    /** Copies output frames from CH until the command finishes.
+     *  @param ch Connection to the server
+     *  @return Exit status of the command
+     */
+    private static int receive(SocketChannel ch) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Server.FRAME_HEADER);
+        while (true) {
+            header.clear();
+            Server.readFully(ch, header);
+            byte kind = header.get(0);
+            ByteBuffer body = ByteBuffer.allocate(header.getInt(1));
+            Server.readFully(ch, body);
+            if (kind == Server.EXIT) {
+                return body.getInt(0);
+            }
+            PrintStream to = kind == Server.ERR ? System.err : System.out;
+            to.write(body.array(), 0, body.limit());
+        }
+    }
+}
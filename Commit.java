@@ -1,14 +1,30 @@
 package gitlet;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 /** Class to represent commit object.
+ *
+ *  Commits are stored in a versioned binary form, and a commit's id is
+ *  the sha1 of that form:
+ *      [magic:4][version:1][message][time:8][parent count:1][parent:20]...
+ *      [tree:20]
+ *  with the message as [length:4][UTF-8 bytes] and each id raw.  The
+ *  tracked files are kept in a Tree per directory, and a new commit
+ *  records only its changes against its parent's trees, so saving it
+ *  writes trees just for the directories it changed.  Version 1 commits,
+ *  which list every tracked file instead of a tree, and commits written
+ *  by earlier builds as serialized Java objects are still read; the
+ *  migrate command rewrites the latter.
  * @author Ishil Puri
  */
 public class Commit implements Serializable {
@@ -26,27 +42,138 @@ public class Commit implements Serializable {
         } else {
             this.parentList.add(p);
         }
-        SimpleDateFormat date = new SimpleDateFormat("EEE MMM dd"
-                + " HH:mm:ss yyyy Z");
-        if (this.parent.isEmpty()) {
-            this.timestamp = date.format(new Date(0));
-        } else {
-            this.timestamp = date.format(new Date());
-        }
+        setTime(this.parent.isEmpty() ? 0 : System.currentTimeMillis());
+    }
+
+    /** Creates an empty commit, to be filled in by decode. */
+    private Commit() {
     }
 
     /** Saves a commit to a file for future use.
      * @return sha1 of commit obj
      */
     public String saveCommit() throws IOException {
-        String uid = Utils.sha1(Utils.serialize(this));
-        File newCommit = Utils.join(Repository.COMMITSFOLDER, uid);
-        newCommit.createNewFile();
+        byte[] data = encode();
+        String uid = Utils.sha1(data);
         this.commitUID = uid;
-        Utils.writeObject(newCommit, this);
+        boolean fresh = !Repository.OBJECTS.contains(uid);
+        Repository.OBJECTS.write(uid, ObjectStore.COMMIT, data);
+        Repository.GRAPH.add(uid, this);
+        Repository.COMMITS.put(uid, this);
+        if (fresh) {
+            Repository.MESSAGES.add(uid, message);
+        }
         return uid;
     }
 
+    /** @return Commit with the given id, from the commit cache or read
+     *  from storage, or null if there is none
+     *  @param cID Sha1 id of the commit
+     */
+    static Commit read(String cID) {
+        return Repository.COMMITS.get(cID);
+    }
+
+    /** @return This commit in its stored binary form */
+    byte[] encode() {
+        byte[] msg = message.getBytes(StandardCharsets.UTF_8);
+        int size = HEADER + 4 + msg.length + 8 + 1
+                + parentList.size() * ID_BYTES + ID_BYTES;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).put(VERSION);
+        out.putInt(msg.length).put(msg).putLong(getTime());
+        out.put((byte) parentList.size());
+        for (String p : parentList) {
+            out.put(Utils.uidToBytes(p));
+        }
+        out.put(Utils.uidToBytes(getTree()));
+        return out.array();
+    }
+
+    /** @return Commit ID decoded from its stored form DATA, which may be
+     *  the serialized Java object written by earlier builds
+     *  @param id Sha1 id of the commit
+     *  @param data Stored commit
+     */
+    static Commit decode(String id, byte[] data) {
+        Trace.count(Trace.Counter.COMMITS_READ, 1);
+        if (isLegacy(data)) {
+            Commit c = Utils.deserialize(data, Commit.class);
+            c.commitUID = id;
+            try {
+                c.time = new SimpleDateFormat(DATE_FORMAT).parse(c.timestamp)
+                        .getTime();
+            } catch (ParseException e) {
+                throw Utils.error("Corrupt commit %s.", id);
+            }
+            return c;
+        }
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int version = in.getInt() == MAGIC ? in.get() : -1;
+        if (version != 1 && version != VERSION) {
+            throw Utils.error("Corrupt commit %s.", id);
+        }
+        Commit c = new Commit();
+        c.commitUID = id;
+        c.message = readString(in);
+        c.setTime(in.getLong());
+        int parents = in.get();
+        byte[] raw = new byte[ID_BYTES];
+        for (int i = 0; i < parents; i += 1) {
+            in.get(raw);
+            c.parentList.add(Utils.bytesToUid(raw, 0));
+        }
+        c.parent = parents > 0 ? c.parentList.get(0) : "";
+        c.mergeParent = parents > 1 ? c.parentList.get(1) : null;
+        if (version == VERSION) {
+            in.get(raw);
+            c.tree = Utils.bytesToUid(raw, 0);
+            c.tracking = null;
+            return c;
+        }
+        int entries = in.getInt();
+        c.tracking = new HashMap<>(entries * 4 / 3 + 1);
+        for (int i = 0; i < entries; i += 1) {
+            String name = readString(in);
+            in.get(raw);
+            c.tracking.put(name, Utils.bytesToUid(raw, 0));
+        }
+        return c;
+    }
+
+    /** @return Whether DATA is a commit serialized as a Java object
+     *  @param data Stored commit
+     */
+    static boolean isLegacy(byte[] data) {
+        return data.length >= 2 && (data[0] & 0xff) == 0xac
+                && (data[1] & 0xff) == 0xed;
+    }
+
+    /** @return Length-prefixed UTF-8 string read from IN
+     *  @param in Encoded commit
+     */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        String s = new String(in.array(), in.position(), length,
+                StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    /** Replaces each parent id found in RENAMED with its new id.
+     *  @param renamed New ids of rewritten commits, by old id
+     */
+    void renameParents(Map<String, String> renamed) {
+        for (int i = 0; i < parentList.size(); i += 1) {
+            parentList.set(i, renamed.getOrDefault(parentList.get(i),
+                    parentList.get(i)));
+        }
+        parent = renamed.getOrDefault(parent, parent);
+        if (mergeParent != null) {
+            mergeParent = renamed.getOrDefault(mergeParent, mergeParent);
+        }
+    }
+
     /** @return commit msg */
     public String getMessage() {
         return message;
@@ -55,6 +182,17 @@ public class Commit implements Serializable {
     public String getTimestamp() {
         return timestamp;
     }
+    /** @return commit time in milliseconds since the epoch */
+    public long getTime() {
+        return time;
+    }
+    /** Sets the time of this new commit.
+     * @param millis Milliseconds since the epoch
+     */
+    void setTime(long millis) {
+        time = millis;
+        timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date(millis));
+    }
     /** @return commit parent (hash) */
     public String getParent() {
         return parent;
@@ -71,22 +209,117 @@ public class Commit implements Serializable {
         this.parentList.add(mergeParentID);
     }
 
-    /** @return Hashmap for tracking committed files name to hash */
+    /** @return Hashmap for tracking committed files name to hash,
+     *  built from this commit's trees the first time it is asked for */
     public HashMap<String, String> getTracking() {
+        if (tracking == null) {
+            tracking = new HashMap<>();
+            if (changes == null) {
+                Tree.flatten(tree, "", tracking);
+            } else {
+                Tree.flatten(baseTree, "", tracking);
+                for (Map.Entry<String, String> e : changes.entrySet()) {
+                    if (e.getValue() == null) {
+                        tracking.remove(e.getKey());
+                    } else {
+                        tracking.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+        }
         return tracking;
     }
 
+    /** @return Blob id of file FILENAME in this commit, or null if it
+     *  does not track it
+     *  @param fileName Path of the file
+     */
+    public String getBlob(String fileName) {
+        if (tracking != null) {
+            return tracking.get(fileName);
+        } else if (changes != null && changes.containsKey(fileName)) {
+            return changes.get(fileName);
+        }
+        return Tree.lookup(changes == null ? tree : baseTree, fileName);
+    }
+
+    /** @return Id of the root tree of this commit, writing the trees of
+     *  a new commit the first time it is asked for */
+    String getTree() {
+        if (tree == null) {
+            tree = changes != null ? Tree.update(baseTree, changes)
+                    : Tree.build(tracking);
+        }
+        return tree;
+    }
+
+    /** Starts this new commit off tracking the files BASE tracks.
+     *  @param base Commit whose files are kept
+     */
+    public void inherit(Commit base) {
+        baseTree = base.getTree();
+        changes = new TreeMap<>();
+        tracking = null;
+        tree = null;
+    }
+
+    /** Tracks file FILENAME with blob id BLOBID in this new commit.
+     *  @param fileName Path of the file
+     *  @param blobID Sha1 id of its contents
+     */
+    public void track(String fileName, String blobID) {
+        changes.put(fileName, blobID);
+        if (tracking != null) {
+            tracking.put(fileName, blobID);
+        }
+        tree = null;
+    }
+
+    /** Stops tracking file FILENAME in this new commit.
+     *  @param fileName Path of the file
+     */
+    public void untrack(String fileName) {
+        changes.put(fileName, null);
+        if (tracking != null) {
+            tracking.remove(fileName);
+        }
+        tree = null;
+    }
+
     /** @return List of parents **/
     public ArrayList<String> getParentList() {
         return parentList;
     }
 
+    /** Serialization version, pinned so commits written by earlier
+     *  builds still load. */
+    private static final long serialVersionUID = 5968566453388647344L;
+
+    /** Format of commit timestamps. */
+    private static final String DATE_FORMAT = "EEE MMM dd HH:mm:ss yyyy Z";
+
+    /** Magic number at the start of a stored commit ("GCMT"). */
+    private static final int MAGIC = 0x47434d54;
+
+    /** Stored commit format version. */
+    private static final byte VERSION = 2;
+
+    /** Bytes preceding the message of a stored commit. */
+    private static final int HEADER = 5;
+
+    /** Bytes in a raw sha1 id. */
+    private static final int ID_BYTES = 20;
+
     /** Commit message field. */
     private String message;
 
-    /** Commit time field. */
+    /** Commit time field, as log prints it. */
     private String timestamp;
 
+    /** Commit time in milliseconds since the epoch.  Commits stored as
+     *  Java objects kept only the timestamp, whose time decode parses. */
+    private transient long time;
+
     /** Commit sha1 id field. */
     private String commitUID;
 
@@ -99,7 +332,18 @@ public class Commit implements Serializable {
     /** List of all parents. */
     private ArrayList<String> parentList = new ArrayList<>();
 
-    /** Map of files being tracked (name, UID). */
+    /** Map of files being tracked (name, UID), or null until it is
+     *  built from the trees. */
     private HashMap<String, String> tracking = new HashMap<>();
 
+    /** Id of the root tree, or null until it is written. */
+    private transient String tree;
+
+    /** Id of the root tree of the commit a new commit started from. */
+    private transient String baseTree;
+
+    /** Blob id of each path changed from baseTree, null for removed
+     *  paths, or null if this is not a new commit. */
+    private transient TreeMap<String, String> changes;
+
 }
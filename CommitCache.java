@@ -0,0 +1,61 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Bounded cache of deserialized commits, keyed by id.  Commits are
+ *  never changed once saved, so a cached commit stays valid for as long
+ *  as it is kept; the least recently used one is dropped once more than
+ *  a fixed number are held.
+ *  @author Ishil Puri
+ */
+class CommitCache {
+
+    /** Creates a cache holding at most CAPACITY commits.
+     *  @param capacity Largest number of commits kept
+     */
+    CommitCache(int capacity) {
+        _commits = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Commit> e) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** @return Commit ID, deserialized from storage only if it is not
+     *  cached, or null if there is no such commit
+     *  @param id Sha1 id of the commit
+     */
+    synchronized Commit get(String id) {
+        Commit c = _commits.get(id);
+        if (c != null) {
+            Trace.count(Trace.Counter.COMMIT_CACHE_HITS, 1);
+            return c;
+        }
+        Trace.count(Trace.Counter.COMMIT_CACHE_MISSES, 1);
+        byte[] data = Repository.OBJECTS.read(id, ObjectStore.COMMIT);
+        if (data == null) {
+            return null;
+        }
+        c = Commit.decode(id, data);
+        _commits.put(id, c);
+        return c;
+    }
+
+    /** Drops every cached commit. */
+    synchronized void clear() {
+        _commits.clear();
+    }
+
+    /** Caches commit C, just saved as ID.
+     *  @param id Sha1 id of the commit
+     *  @param c The commit
+     */
+    synchronized void put(String id, Commit c) {
+        _commits.put(id, c);
+    }
+
+    /** Cached commits, least recently used first. */
+    private final LinkedHashMap<String, Commit> _commits;
+}
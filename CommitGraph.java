@@ -0,0 +1,237 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+
+/** Parent links, generation numbers and times of every commit, kept so
+ *  that history can be walked without deserializing commits.
+ *
+ *  Commits are numbered by position in the order they were added, so a
+ *  commit's parents always have smaller positions.  The graph is kept in
+ *  a single append-only file:
+ *      commit-graph -- [magic:4][version:4] header followed by one
+ *                      [id:20][parent:4][merge parent:4][generation:4]
+ *                      [time:8] record per commit, parents given as
+ *                      positions or NONE.
+ *  A commit's generation is one more than the largest generation of its
+ *  parents, so an ancestor always has a smaller generation than its
+ *  descendants.  Commits missing from the file, as in repositories that
+ *  predate it, are added from the object store when first looked up.
+ *  @author Ishil Puri
+ */
+class CommitGraph {
+
+    /** Position standing for no commit. */
+    static final int NONE = -1;
+
+    /** Creates a graph kept in FILE.  Nothing is read until the graph
+     *  is first used.
+     *  @param file Path of the graph file
+     */
+    CommitGraph(File file) {
+        _file = file;
+    }
+
+    /** Adds commit C, whose id is ID, after its parents.
+     *  @return Position of the commit
+     *  @param id Sha1 id of the commit
+     *  @param c The commit
+     */
+    int add(String id, Commit c) {
+        load();
+        Integer known = _positions.get(id);
+        if (known != null) {
+            return known;
+        }
+        List<String> parents = c.getParentList();
+        int first = parents.size() > 0 ? position(parents.get(0)) : NONE;
+        int second = parents.size() > 1 ? position(parents.get(1)) : NONE;
+        int gen = 1 + Math.max(first == NONE ? 0 : generation(first),
+                second == NONE ? 0 : generation(second));
+        if (_data.remaining() < RECORD) {
+            ByteBuffer grown = ByteBuffer.allocate(2 * _data.capacity()
+                    + RECORD);
+            _data.flip();
+            _data = grown.put(_data);
+        }
+        int at = _data.position();
+        _data.put(Utils.uidToBytes(id)).putInt(first).putInt(second)
+                .putInt(gen).putLong(c.getTime());
+        try (FileChannel ch = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (ch.size() < HEADER) {
+                ch.write(ByteBuffer.allocate(HEADER).putInt(MAGIC)
+                        .putInt(VERSION).flip(), 0);
+            }
+            ByteBuffer rec = _data.duplicate().position(at).limit(at + RECORD);
+            long pos = HEADER + at;
+            while (rec.hasRemaining()) {
+                pos += ch.write(rec, pos);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot update commit graph.");
+        }
+        int pos = _size;
+        _size += 1;
+        _positions.put(id, pos);
+        return pos;
+    }
+
+    /** @return Position of commit ID, adding it and any missing
+     *  ancestors from the object store if needed, or NONE if there is no
+     *  such commit
+     *  @param id Sha1 id of the commit
+     */
+    int position(String id) {
+        load();
+        Integer known = _positions.get(id);
+        if (known != null) {
+            return known;
+        }
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        HashMap<String, Commit> loaded = new HashMap<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            String at = pending.peek();
+            if (_positions.containsKey(at)) {
+                pending.pop();
+                continue;
+            }
+            Commit c = loaded.get(at);
+            if (c == null) {
+                c = Commit.read(at);
+                if (c == null) {
+                    return NONE;
+                }
+                loaded.put(at, c);
+            }
+            boolean ready = true;
+            for (String p : c.getParentList()) {
+                if (!_positions.containsKey(p)) {
+                    pending.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                pending.pop();
+                loaded.remove(at);
+                add(at, c);
+            }
+        }
+        return _positions.get(id);
+    }
+
+    /** Deletes the graph file and forgets every commit, so that the
+     *  graph is rebuilt from the object store as commits are looked up. */
+    void reset() {
+        _file.delete();
+        reload();
+    }
+
+    /** Forgets what was read from the graph file, so that commits added
+     *  by other processes are seen. */
+    void reload() {
+        _data = null;
+        _positions = null;
+        _size = 0;
+    }
+
+    /** @return Number of commits in the graph */
+    int size() {
+        load();
+        return _size;
+    }
+
+    /** @return Sha1 id of the commit at POS
+     *  @param pos Commit position
+     */
+    String id(int pos) {
+        return Utils.bytesToUid(_data.array(), pos * RECORD);
+    }
+
+    /** @return Position of the first parent of the commit at POS, or NONE
+     *  @param pos Commit position
+     */
+    int parent(int pos) {
+        return _data.getInt(pos * RECORD + ID_BYTES);
+    }
+
+    /** @return Position of the merge parent of the commit at POS, or NONE
+     *  @param pos Commit position
+     */
+    int mergeParent(int pos) {
+        return _data.getInt(pos * RECORD + ID_BYTES + 4);
+    }
+
+    /** @return Generation number of the commit at POS
+     *  @param pos Commit position
+     */
+    int generation(int pos) {
+        return _data.getInt(pos * RECORD + ID_BYTES + 8);
+    }
+
+    /** @return Time of the commit at POS, in milliseconds since the epoch
+     *  @param pos Commit position
+     */
+    long time(int pos) {
+        return _data.getLong(pos * RECORD + ID_BYTES + 12);
+    }
+
+    /** Reads the graph file, if not yet read. */
+    private void load() {
+        if (_data != null) {
+            return;
+        }
+        _positions = new HashMap<>();
+        byte[] raw = _file.isFile() ? Utils.readContents(_file) : new byte[0];
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        if (raw.length >= HEADER && (in.getInt() != MAGIC
+                || in.getInt() != VERSION)) {
+            throw Utils.error("Corrupt commit graph.");
+        }
+        _size = Math.max(0, raw.length - HEADER) / RECORD;
+        _data = ByteBuffer.allocate(Math.max(_size, INITIAL) * RECORD);
+        if (_size > 0) {
+            _data.put(raw, HEADER, _size * RECORD);
+        }
+        for (int i = 0; i < _size; i += 1) {
+            _positions.put(id(i), i);
+        }
+    }
+
+    /** Magic number at the start of the graph file ("GGRF"). */
+    private static final int MAGIC = 0x47475246;
+
+    /** Graph file format version. */
+    private static final int VERSION = 1;
+
+    /** Bytes in the graph file header. */
+    private static final int HEADER = 8;
+
+    /** Bytes in a raw sha1 id. */
+    private static final int ID_BYTES = 20;
+
+    /** Bytes in one commit record. */
+    private static final int RECORD = ID_BYTES + 20;
+
+    /** Records room is first made for. */
+    private static final int INITIAL = 64;
+
+    /** Path of the graph file. */
+    private final File _file;
+
+    /** Commit records, by position, or null if not yet read. */
+    private ByteBuffer _data;
+
+    /** Number of commits in _data. */
+    private int _size;
+
+    /** Positions of commits, by id. */
+    private HashMap<String, Integer> _positions;
+}
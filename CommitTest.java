@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of how commits are stored and rewritten.
+ *  @author Ishil Puri
+ */
+public class CommitTest {
+
+    /** Starts each test in an empty repository. */
+    @Before
+    public void setUp() throws IOException {
+        _repo = TestRepo.create();
+    }
+
+    /** A commit decodes to the same message, time, parents and files. */
+    @Test
+    public void encodeDecode() throws IOException {
+        String initial = _repo.getHEAD();
+        Commit c = new Commit("two parents", initial);
+        c.setMergeParent(Utils.sha1("other"));
+        c.inherit(Commit.read(initial));
+        c.track("a/b", BLOB1);
+        c.track("c", BLOB2);
+        String id = c.saveCommit();
+        byte[] data = c.encode();
+        assertEquals(id, Utils.sha1(data));
+        Commit d = Commit.decode(id, data);
+        assertEquals(id, d.getCommitUID());
+        assertEquals("two parents", d.getMessage());
+        assertEquals(c.getTime(), d.getTime());
+        assertTrue(Math.abs(System.currentTimeMillis() - d.getTime())
+                < MINUTE);
+        assertEquals(c.getTimestamp(), d.getTimestamp());
+        assertEquals(initial, d.getParent());
+        assertEquals(Arrays.asList(initial, Utils.sha1("other")),
+                d.getParentList());
+        assertEquals(c.getTree(), d.getTree());
+        assertEquals(BLOB1, d.getBlob("a/b"));
+        assertEquals(BLOB2, d.getBlob("c"));
+        assertNull(d.getBlob("a"));
+        assertEquals(c.getTracking(), d.getTracking());
+        assertArrayEquals(data, d.encode());
+    }
+
+    /** The initial commit is at the epoch and has no parents. */
+    @Test
+    public void initial() {
+        Commit c = Commit.read(_repo.getHEAD());
+        assertEquals(0, c.getTime());
+        assertEquals("", c.getParent());
+        assertTrue(c.getParentList().isEmpty());
+        assertTrue(c.getTracking().isEmpty());
+    }
+
+    /** Migrate rewrites a commit stored as a Java object, and the commit
+     *  on top of it, keeping their messages, parents and files, and
+     *  forgets the old ids. */
+    @Test
+    public void migrate() throws IOException {
+        String initial = _repo.getHEAD();
+        Commit legacy = new Commit("legacy", initial);
+        Repository.OBJECTS.write(BLOB1, ObjectStore.BLOB, new byte[] {1});
+        legacy.getTracking().put("f", BLOB1);
+        byte[] data = Utils.serialize(legacy);
+        assertTrue(Commit.isLegacy(data));
+        String legacyId = Utils.sha1(data);
+        Repository.OBJECTS.write(legacyId, ObjectStore.COMMIT, data);
+        Repository.GRAPH.add(legacyId, legacy);
+        _repo.setHead("master", legacyId);
+        TestRepo.write("g", "g\n");
+        _repo.add("g");
+        _repo.commit("child");
+        String childId = _repo.getHEAD();
+        _repo.migrate();
+        _repo.close();
+        Repository.reload();
+        Repository.COMMITS.clear();
+        for (String id : Repository.OBJECTS.ids(ObjectStore.COMMIT)) {
+            assertFalse(Commit.isLegacy(Repository.OBJECTS.read(id,
+                    ObjectStore.COMMIT)));
+        }
+        assertFalse(Repository.OBJECTS.contains(legacyId));
+        assertFalse(Repository.OBJECTS.contains(childId));
+        assertNotEquals(childId, _repo.getHEAD());
+        Commit child = Commit.read(_repo.getHEAD());
+        assertEquals("child", child.getMessage());
+        assertEquals(BLOB1, child.getBlob("f"));
+        assertEquals(Utils.sha1Contents(Utils.join(Repository.CWD, "g")),
+                child.getBlob("g"));
+        Commit parent = Commit.read(child.getParent());
+        assertEquals("legacy", parent.getMessage());
+        assertEquals(Commit.decode(legacyId, data).getTime(),
+                parent.getTime());
+        assertEquals(BLOB1, parent.getBlob("f"));
+        assertEquals(new ArrayList<>(Arrays.asList(initial)),
+                parent.getParentList());
+        assertEquals(3, Repository.OBJECTS.ids(ObjectStore.COMMIT).size());
+    }
+
+    /** Milliseconds in a minute. */
+    private static final long MINUTE = 60000;
+
+    /** A blob id. */
+    private static final String BLOB1 = Utils.sha1("one");
+
+    /** Another blob id. */
+    private static final String BLOB2 = Utils.sha1("two");
+
+    /** Repository each test runs in. */
+    private Repository _repo;
+}
@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Binary deltas that rebuild one version of a file from another.
+ *
+ *  A delta is [base length][target length] followed by instructions,
+ *  all lengths and offsets as unsigned varints:
+ *      0x80 [offset][length] -- copy length bytes of the base at offset
+ *      n (1..127) [n bytes]  -- insert the next n bytes literally
+ *  Matches are found by indexing fixed-size blocks of the base and
+ *  rolling a hash of the same width across the target.
+ *  @author Ishil Puri
+ */
+class Delta {
+
+    /** @return Delta that rebuilds TARGET from BASE
+     *  @param base Prior version
+     *  @param target New version
+     */
+    static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int literal = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer cand = blocks.get(h);
+            if (cand != null && matches(base, cand, target, i)) {
+                int start = cand, at = i;
+                while (start > 0 && at > literal
+                        && base[start - 1] == target[at - 1]) {
+                    start -= 1;
+                    at -= 1;
+                }
+                int len = i - at + BLOCK;
+                while (start + len < base.length && at + len < target.length
+                        && base[start + len] == target[at + len]) {
+                    len += 1;
+                }
+                writeLiteral(out, target, literal, at);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, len);
+                i = at + len;
+                literal = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - (target[i] & 0xff) * POW) * PRIME
+                            + (target[i + BLOCK] & 0xff);
+                }
+                i += 1;
+            }
+        }
+        writeLiteral(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /** @return Target rebuilt by applying DELTA to BASE
+     *  @param base Prior version
+     *  @param delta Delta produced by encode
+     */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int at = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++] & 0xff;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, offset, result, at, len);
+                at += len;
+            } else {
+                System.arraycopy(delta, pos[0], result, at, op);
+                pos[0] += op;
+                at += op;
+            }
+        }
+        if (at != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** @return Whether the BLOCK bytes of A at I equal those of B at J
+     *  @param a First array
+     *  @param i Start in A
+     *  @param b Second array
+     *  @param j Start in B
+     */
+    private static boolean matches(byte[] a, int i, byte[] b, int j) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return Rolling hash of the BLOCK bytes of DATA starting at I
+     *  @param data Bytes to hash
+     *  @param i Start of the block
+     */
+    private static int hash(byte[] data, int i) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + (data[i + k] & 0xff);
+        }
+        return h;
+    }
+
+    /** Writes insert instructions for DATA[FROM..TO) to OUT.
+     *  @param out Delta being built
+     *  @param data Target bytes
+     *  @param from Start of the literal run
+     *  @param to End of the literal run
+     */
+    private static void writeLiteral(ByteArrayOutputStream out, byte[] data,
+                                     int from, int to) {
+        while (from < to) {
+            int n = Math.min(to - from, MAX_LITERAL);
+            out.write(n);
+            out.write(data, from, n);
+            from += n;
+        }
+    }
+
+    /** Writes V to OUT as an unsigned varint.
+     *  @param out Delta being built
+     *  @param v Non-negative value
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7f) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    /** @return Varint read from DATA at POS[0], advancing POS[0]
+     *  @param data Delta bytes
+     *  @param pos One-element cursor
+     */
+    private static int readVarint(byte[] data, int[] pos) {
+        int v = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = data[pos[0]++] & 0xff;
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+    }
+
+    /** Width of indexed blocks and of the rolling hash window. */
+    private static final int BLOCK = 16;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** PRIME raised to BLOCK - 1, for removing the oldest byte. */
+    private static final int POW;
+
+    static {
+        int p = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            p *= PRIME;
+        }
+        POW = p;
+    }
+
+    /** Opcode of a copy instruction. */
+    private static final int COPY = 0x80;
+
+    /** Longest literal run a single insert instruction can carry. */
+    private static final int MAX_LITERAL = 0x7f;
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the binary deltas between versions of a blob.
+ *  @author Ishil Puri
+ */
+public class DeltaTest {
+
+    /** Deltas rebuild the target from the base, however the two differ. */
+    @Test
+    public void roundTrip() {
+        Random random = new Random(SEED);
+        for (int trial = 0; trial < TRIALS; trial += 1) {
+            byte[] base = bytes(random, random.nextInt(MAX_SIZE));
+            byte[] target = edit(random, base);
+            byte[] delta = Delta.encode(base, target);
+            assertArrayEquals(target, Delta.apply(base, delta));
+        }
+    }
+
+    /** Empty bases and targets are handled. */
+    @Test
+    public void empty() {
+        byte[] some = bytes(new Random(SEED), MAX_SIZE);
+        byte[] none = new byte[0];
+        assertArrayEquals(some, Delta.apply(none, Delta.encode(none, some)));
+        assertArrayEquals(none, Delta.apply(some, Delta.encode(some, none)));
+        assertArrayEquals(none, Delta.apply(none, Delta.encode(none, none)));
+    }
+
+    /** A small edit to a large blob gives a small delta. */
+    @Test
+    public void smallEdit() {
+        Random random = new Random(SEED);
+        byte[] base = bytes(random, MAX_SIZE);
+        byte[] target = Arrays.copyOf(base, base.length);
+        target[base.length / 2] ^= 1;
+        byte[] delta = Delta.encode(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < base.length / 100);
+    }
+
+    /** @return N random bytes, drawn from a few values so that runs
+     *  repeat
+     *  @param random Source of the bytes
+     *  @param n Number of bytes
+     */
+    private static byte[] bytes(Random random, int n) {
+        byte[] result = new byte[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return result;
+    }
+
+    /** @return DATA with a few random ranges inserted, deleted, replaced
+     *  or moved
+     *  @param random Source of the edits
+     *  @param data Original bytes
+     */
+    private static byte[] edit(Random random, byte[] data) {
+        byte[] result = data;
+        for (int k = random.nextInt(EDITS); k > 0; k -= 1) {
+            int at = random.nextInt(result.length + 1);
+            int length = random.nextInt(Math.min(result.length - at, 200)
+                    + 1);
+            byte[] insert = random.nextBoolean() ? bytes(random,
+                    random.nextInt(200)) : Arrays.copyOfRange(data, 0,
+                    random.nextInt(data.length + 1));
+            byte[] next = new byte[result.length - length + insert.length];
+            System.arraycopy(result, 0, next, 0, at);
+            System.arraycopy(insert, 0, next, at, insert.length);
+            System.arraycopy(result, at + length, next, at + insert.length,
+                    result.length - at - length);
+            result = next;
+        }
+        return result;
+    }
+
+    /** Seed of the random blobs. */
+    private static final long SEED = 61;
+
+    /** Number of random pairs of blobs. */
+    private static final int TRIALS = 500;
+
+    /** Largest random blob. */
+    private static final int MAX_SIZE = 20000;
+
+    /** Most edits made to a blob. */
+    private static final int EDITS = 8;
+}
@@ -0,0 +1,459 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Line-by-line differences between two versions of a file.
+ *
+ *  Lines are first given small integer ids, equal lines getting equal
+ *  ids, through one hash table shared by both versions, so the search
+ *  compares ints rather than bytes.  The search is Myers' O(ND)
+ *  algorithm in its linear-space form: after trimming the lines the two
+ *  versions share at each end, it finds the middle snake of a shortest
+ *  edit script by searching from both ends at once, and recurses on the
+ *  two halves on either side of it.  Besides the versions themselves,
+ *  it uses a few int arrays proportional to their line counts, so
+ *  multi-megabyte files take memory in proportion to their size, never
+ *  to the product of their lengths.  When versions differ so much that
+ *  finding a shortest script would take more than about the square root
+ *  of their length in steps per split, the furthest-reaching path found
+ *  so far is used as the split instead, which gives a correct, if not
+ *  always minimal, script in bounded time.
+ *  @author Ishil Puri
+ */
+class Diff {
+
+    /** @return The changed regions between A and B, in order
+     *  @param a Old version
+     *  @param b New version
+     */
+    static List<Hunk> diff(Lines a, Lines b) {
+        return new Diff(a, b).hunks();
+    }
+
+    /** Prepares to compare A with B.
+     *  @param a Old version
+     *  @param b New version
+     */
+    private Diff(Lines a, Lines b) {
+        _a = a;
+        _b = b;
+        int n = a.size(), m = b.size();
+        _x = new int[n];
+        _y = new int[m];
+        intern();
+        _changedX = new boolean[n];
+        _changedY = new boolean[m];
+        int diags = n + m + 3;
+        _fd = new int[diags];
+        _bd = new int[diags];
+        _off = m + 1;
+        int limit = 1;
+        for (int d = diags; d != 0; d >>= 2) {
+            limit <<= 1;
+        }
+        _costLimit = Math.max(MIN_COST, limit);
+    }
+
+    /** Gives each line of both versions its id. */
+    private void intern() {
+        int n = _x.length, m = _y.length;
+        int size = Integer.highestOneBit(Math.max(4, 2 * (n + m)) - 1) << 1;
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        int[] firstOf = new int[n + m];
+        int ids = 0;
+        for (int k = 0; k < n + m; k += 1) {
+            Lines v = k < n ? _a : _b;
+            int line = k < n ? k : k - n;
+            int slot = v.hash(line) & (size - 1);
+            int id;
+            while (true) {
+                int e = table[slot];
+                if (e < 0) {
+                    id = ids;
+                    firstOf[ids] = k;
+                    ids += 1;
+                    table[slot] = id;
+                    break;
+                }
+                int f = firstOf[e];
+                if (v.sameLine(line, f < n ? _a : _b, f < n ? f : f - n)) {
+                    id = e;
+                    break;
+                }
+                slot = (slot + 1) & (size - 1);
+            }
+            if (k < n) {
+                _x[line] = id;
+            } else {
+                _y[line] = id;
+            }
+        }
+    }
+
+    /** @return Runs of changed lines, after marking them */
+    private List<Hunk> hunks() {
+        compare(0, _x.length, 0, _y.length);
+        ArrayList<Hunk> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < _x.length || j < _y.length) {
+            if (i < _x.length && _changedX[i]
+                    || j < _y.length && _changedY[j]) {
+                int i0 = i, j0 = j;
+                while (i < _x.length && _changedX[i]) {
+                    i += 1;
+                }
+                while (j < _y.length && _changedY[j]) {
+                    j += 1;
+                }
+                result.add(new Hunk(i0, i, j0, j));
+            } else {
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Marks the lines that change between lines XOFF to XLIM of the old
+     *  version and YOFF to YLIM of the new one.
+     *  @param xoff First old line
+     *  @param xlim Line just past the last old line
+     *  @param yoff First new line
+     *  @param ylim Line just past the last new line
+     */
+    private void compare(int xoff, int xlim, int yoff, int ylim) {
+        while (xoff < xlim && yoff < ylim && _x[xoff] == _y[yoff]) {
+            xoff += 1;
+            yoff += 1;
+        }
+        while (xlim > xoff && ylim > yoff && _x[xlim - 1] == _y[ylim - 1]) {
+            xlim -= 1;
+            ylim -= 1;
+        }
+        if (xoff == xlim) {
+            Arrays.fill(_changedY, yoff, ylim, true);
+        } else if (yoff == ylim) {
+            Arrays.fill(_changedX, xoff, xlim, true);
+        } else {
+            long mid = split(xoff, xlim, yoff, ylim);
+            int xmid = (int) (mid >>> 32), ymid = (int) mid;
+            compare(xoff, xmid, yoff, ymid);
+            compare(xmid, xlim, ymid, ylim);
+        }
+    }
+
+    /** @return The point, packed as x in the high and y in the low 32
+     *  bits, at which a shortest edit script between the old lines XOFF
+     *  to XLIM and new lines YOFF to YLIM crosses its middle, or the
+     *  furthest point reached if that takes too long to find
+     *  @param xoff First old line
+     *  @param xlim Line just past the last old line
+     *  @param yoff First new line
+     *  @param ylim Line just past the last new line
+     */
+    private long split(int xoff, int xlim, int yoff, int ylim) {
+        int[] fd = _fd, bd = _bd;
+        int off = _off;
+        int dmin = xoff - ylim, dmax = xlim - yoff;
+        int fmid = xoff - yoff, bmid = xlim - ylim;
+        int fmin = fmid, fmax = fmid, bmin = bmid, bmax = bmid;
+        boolean odd = ((fmid - bmid) & 1) != 0;
+        fd[off + fmid] = xoff;
+        bd[off + bmid] = xlim;
+        for (int c = 1;; c += 1) {
+            if (fmin > dmin) {
+                fmin -= 1;
+                fd[off + fmin - 1] = -1;
+            } else {
+                fmin += 1;
+            }
+            if (fmax < dmax) {
+                fmax += 1;
+                fd[off + fmax + 1] = -1;
+            } else {
+                fmax -= 1;
+            }
+            for (int d = fmax; d >= fmin; d -= 2) {
+                int tlo = fd[off + d - 1], thi = fd[off + d + 1];
+                int x = tlo >= thi ? tlo + 1 : thi;
+                int y = x - d;
+                while (x < xlim && y < ylim && _x[x] == _y[y]) {
+                    x += 1;
+                    y += 1;
+                }
+                fd[off + d] = x;
+                if (odd && bmin <= d && d <= bmax && bd[off + d] <= x) {
+                    return pack(x, y);
+                }
+            }
+            if (bmin > dmin) {
+                bmin -= 1;
+                bd[off + bmin - 1] = Integer.MAX_VALUE;
+            } else {
+                bmin += 1;
+            }
+            if (bmax < dmax) {
+                bmax += 1;
+                bd[off + bmax + 1] = Integer.MAX_VALUE;
+            } else {
+                bmax -= 1;
+            }
+            for (int d = bmax; d >= bmin; d -= 2) {
+                int tlo = bd[off + d - 1], thi = bd[off + d + 1];
+                int x = tlo < thi ? tlo : thi - 1;
+                int y = x - d;
+                while (x > xoff && y > yoff && _x[x - 1] == _y[y - 1]) {
+                    x -= 1;
+                    y -= 1;
+                }
+                bd[off + d] = x;
+                if (!odd && fmin <= d && d <= fmax && x <= fd[off + d]) {
+                    return pack(x, y);
+                }
+            }
+            if (c >= _costLimit) {
+                return furthest(xoff, xlim, yoff, ylim,
+                        fmin, fmax, bmin, bmax);
+            }
+        }
+    }
+
+    /** @return The point, packed as by split, furthest along either
+     *  search so far, given the ranges of diagonals each has reached
+     *  @param xoff First old line
+     *  @param xlim Line just past the last old line
+     *  @param yoff First new line
+     *  @param ylim Line just past the last new line
+     *  @param fmin Lowest diagonal of the forward search
+     *  @param fmax Highest diagonal of the forward search
+     *  @param bmin Lowest diagonal of the backward search
+     *  @param bmax Highest diagonal of the backward search
+     */
+    private long furthest(int xoff, int xlim, int yoff, int ylim,
+                          int fmin, int fmax, int bmin, int bmax) {
+        int fbest = -1, fx = 0;
+        for (int d = fmax; d >= fmin; d -= 2) {
+            int x = Math.min(_fd[_off + d], xlim), y = x - d;
+            if (y > ylim) {
+                x = ylim + d;
+                y = ylim;
+            }
+            if (x + y > fbest) {
+                fbest = x + y;
+                fx = x;
+            }
+        }
+        int bbest = Integer.MAX_VALUE, bx = 0;
+        for (int d = bmax; d >= bmin; d -= 2) {
+            int x = Math.max(xoff, _bd[_off + d]), y = x - d;
+            if (y < yoff) {
+                x = yoff + d;
+                y = yoff;
+            }
+            if (x + y < bbest) {
+                bbest = x + y;
+                bx = x;
+            }
+        }
+        if ((xlim + ylim) - bbest < fbest - (xoff + yoff)) {
+            return pack(fx, fbest - fx);
+        }
+        return pack(bx, bbest - bx);
+    }
+
+    /** @return X and Y packed into one long
+     *  @param x Old line
+     *  @param y New line
+     */
+    private static long pack(int x, int y) {
+        return (long) x << 32 | (y & 0xffffffffL);
+    }
+
+    /** The lines of one version of a file.  A line is the bytes up to
+     *  and including a newline, or the bytes after the last newline. */
+    static final class Lines {
+        /** Splits DATA into lines.
+         *  @param data Contents of the file
+         */
+        Lines(byte[] data) {
+            _data = data;
+            int count = 0;
+            for (byte c : data) {
+                if (c == '\n') {
+                    count += 1;
+                }
+            }
+            boolean tail = data.length > 0 && data[data.length - 1] != '\n';
+            _starts = new int[count + (tail ? 1 : 0) + 1];
+            int k = 1;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n') {
+                    _starts[k] = i + 1;
+                    k += 1;
+                }
+            }
+            _starts[_starts.length - 1] = data.length;
+        }
+
+        /** @return Number of lines */
+        int size() {
+            return _starts.length - 1;
+        }
+
+        /** @return Whether line I of this version has the same bytes as
+         *  line J of OTHER
+         *  @param i Line of this version
+         *  @param other A version
+         *  @param j Line of OTHER
+         */
+        boolean sameLine(int i, Lines other, int j) {
+            return Arrays.equals(_data, _starts[i], _starts[i + 1],
+                    other._data, other._starts[j], other._starts[j + 1]);
+        }
+
+        /** @return Whether lines FROM to TO of this version have the same
+         *  bytes as lines OFROM to OTO of OTHER
+         *  @param from First line of this version
+         *  @param to Line just past the last line of this version
+         *  @param other A version
+         *  @param ofrom First line of OTHER
+         *  @param oto Line just past the last line of OTHER
+         */
+        boolean sameLines(int from, int to, Lines other, int ofrom,
+                          int oto) {
+            return Arrays.equals(_data, _starts[from], _starts[to],
+                    other._data, other._starts[ofrom], other._starts[oto]);
+        }
+
+        /** @return Whether the last line, if there is one, ends without
+         *  a newline */
+        boolean unterminated() {
+            return _data.length > 0 && _data[_data.length - 1] != '\n';
+        }
+
+        /** Writes lines FROM to TO to OUT, each preceded by PREFIX if it
+         *  is not null.
+         *  @param out Stream written
+         *  @param from First line
+         *  @param to Line just past the last
+         *  @param prefix Bytes written before each line, or null
+         */
+        void write(OutputStream out, int from, int to, byte[] prefix)
+            throws IOException {
+            if (prefix == null) {
+                out.write(_data, _starts[from], _starts[to] - _starts[from]);
+                return;
+            }
+            for (int i = from; i < to; i += 1) {
+                out.write(prefix);
+                out.write(_data, _starts[i], _starts[i + 1] - _starts[i]);
+            }
+        }
+
+        /** @return Hash of the bytes of line I
+         *  @param i Line number
+         */
+        private int hash(int i) {
+            int h = 0;
+            for (int k = _starts[i]; k < _starts[i + 1]; k += 1) {
+                h = 31 * h + _data[k];
+            }
+            return h ^ (h >>> 16);
+        }
+
+        /** Contents of the file. */
+        private final byte[] _data;
+
+        /** Offset of the start of each line, then the length of _data. */
+        private final int[] _starts;
+    }
+
+    /** Lines A_START to A_END of the old version, replaced by lines
+     *  B_START to B_END of the new version.  Either range may be empty. */
+    static final class Hunk {
+        /** Creates a hunk.
+         *  @param aStart First old line
+         *  @param aEnd Line just past the last old line
+         *  @param bStart First new line
+         *  @param bEnd Line just past the last new line
+         */
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            _aStart = aStart;
+            _aEnd = aEnd;
+            _bStart = bStart;
+            _bEnd = bEnd;
+        }
+
+        /** @return First old line */
+        int aStart() {
+            return _aStart;
+        }
+
+        /** @return Line just past the last old line */
+        int aEnd() {
+            return _aEnd;
+        }
+
+        /** @return First new line */
+        int bStart() {
+            return _bStart;
+        }
+
+        /** @return Line just past the last new line */
+        int bEnd() {
+            return _bEnd;
+        }
+
+        /** First old line. */
+        private final int _aStart;
+
+        /** Line just past the last old line. */
+        private final int _aEnd;
+
+        /** First new line. */
+        private final int _bStart;
+
+        /** Line just past the last new line. */
+        private final int _bEnd;
+    }
+
+    /** Fewest search steps per split before settling for the furthest
+     *  point reached. */
+    private static final int MIN_COST = 256;
+
+    /** Old version. */
+    private final Lines _a;
+
+    /** New version. */
+    private final Lines _b;
+
+    /** Id of each old line. */
+    private final int[] _x;
+
+    /** Id of each new line. */
+    private final int[] _y;
+
+    /** Whether each old line is deleted. */
+    private final boolean[] _changedX;
+
+    /** Whether each new line is inserted. */
+    private final boolean[] _changedY;
+
+    /** Furthest x reached by the forward search on each diagonal. */
+    private final int[] _fd;
+
+    /** Furthest x reached by the backward search on each diagonal. */
+    private final int[] _bd;
+
+    /** Index in _fd and _bd of diagonal 0. */
+    private final int _off;
+
+    /** Search steps per split before settling for the furthest point
+     *  reached. */
+    private final int _costLimit;
+}
@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of line diffs and of the three-way merges made from them.
+ *  @author Ishil Puri
+ */
+public class DiffTest {
+
+    /** Hunks, applied to the old version, rebuild the new one exactly,
+     *  and change no more lines than a longest common subsequence
+     *  leaves. */
+    @Test
+    public void rebuild() throws IOException {
+        Random random = new Random(SEED);
+        for (int trial = 0; trial < TRIALS; trial += 1) {
+            byte[] a = text(random), b = text(random);
+            Diff.Lines x = new Diff.Lines(a), y = new Diff.Lines(b);
+            List<Diff.Hunk> hunks = Diff.diff(x, y);
+            assertArrayEquals(b, apply(x, y, hunks));
+            int changed = 0;
+            for (Diff.Hunk h : hunks) {
+                assertTrue(h.aEnd() > h.aStart() || h.bEnd() > h.bStart());
+                changed += h.aEnd() - h.aStart() + h.bEnd() - h.bStart();
+            }
+            assertEquals(x.size() + y.size() - 2 * lcs(x, y), changed);
+        }
+    }
+
+    /** Equal versions have no hunks, and a missing final newline is a
+     *  change. */
+    @Test
+    public void edges() {
+        Diff.Lines a = lines("a\nb\n");
+        assertTrue(Diff.diff(a, lines("a\nb\n")).isEmpty());
+        assertTrue(Diff.diff(lines(""), lines("")).isEmpty());
+        List<Diff.Hunk> hunks = Diff.diff(a, lines("a\nb"));
+        assertEquals(1, hunks.size());
+        assertEquals(1, hunks.get(0).aStart());
+        assertEquals(2, hunks.get(0).aEnd());
+        assertEquals(1, Diff.diff(lines(""), a).size());
+    }
+
+    /** A merge where one side is the base gives the other side. */
+    @Test
+    public void oneSideChanged() throws IOException {
+        Random random = new Random(SEED);
+        for (int trial = 0; trial < TRIALS; trial += 1) {
+            byte[] base = text(random), other = text(random);
+            assertMerge(other, true, base, base, other);
+            assertMerge(other, true, base, other, base);
+        }
+    }
+
+    /** A merge where both sides made the same changes gives them. */
+    @Test
+    public void bothSidesSame() throws IOException {
+        Random random = new Random(SEED);
+        for (int trial = 0; trial < TRIALS; trial += 1) {
+            byte[] base = text(random), both = text(random);
+            assertMerge(both, true, base, both, both);
+        }
+    }
+
+    /** Changes to separate lines are both kept. */
+    @Test
+    public void separateChanges() throws IOException {
+        assertMerge("A\n2\n3\n4\nE\n", true, "1\n2\n3\n4\n5\n",
+                "A\n2\n3\n4\n5\n", "1\n2\n3\n4\nE\n");
+        assertMerge("1\n2\n", true, "1\n", "1\n2\n", "1\n");
+    }
+
+    /** Only the lines both sides changed differently are marked. */
+    @Test
+    public void conflict() throws IOException {
+        assertMerge("1\n<<<<<<< HEAD\nA\n=======\nB\n>>>>>>>\n3\n", false,
+                "1\n2\n3\n", "1\nA\n3\n", "1\nB\n3\n");
+        assertMerge("<<<<<<< HEAD\nA\n=======\n>>>>>>>\n", false,
+                "1\n", "A\n", "");
+    }
+
+    /** A conflict in an unterminated last line still puts each marker on
+     *  a line of its own. */
+    @Test
+    public void unterminated() throws IOException {
+        assertMerge("a\n<<<<<<< HEAD\nc\n=======\nd\n>>>>>>>\n", false,
+                "a\nb", "a\nc", "a\nd");
+        assertMerge("a\n<<<<<<< HEAD\nc\n=======\nd\n>>>>>>>\n", false,
+                "a\nb\n", "a\nc", "a\nd\n");
+        assertMerge("a\nb", true, "a\nb\n", "a\nb", "a\nb\n");
+    }
+
+    /** Changes to adjacent lines touch, so they conflict together. */
+    @Test
+    public void adjacent() throws IOException {
+        assertMerge("1\n<<<<<<< HEAD\nX\n3\n=======\n2\nY\n>>>>>>>\n4\n",
+                false, "1\n2\n3\n4\n", "1\nX\n3\n4\n", "1\n2\nY\n4\n");
+    }
+
+    /** Asserts that merging OURS and THEIRS, with common ancestor BASE,
+     *  gives EXPECTED, and is CLEAN or not.
+     *  @param expected Merged text
+     *  @param clean Whether the merge is free of conflicts
+     *  @param base Split point version
+     *  @param ours Current head version
+     *  @param theirs Other head version
+     */
+    private static void assertMerge(String expected, boolean clean,
+                                    String base, String ours, String theirs)
+        throws IOException {
+        assertMerge(bytes(expected), clean, bytes(base), bytes(ours),
+                bytes(theirs));
+    }
+
+    /** Asserts that merging OURS and THEIRS, with common ancestor BASE,
+     *  gives EXPECTED, and is CLEAN or not.
+     *  @param expected Merged contents
+     *  @param clean Whether the merge is free of conflicts
+     *  @param base Split point version
+     *  @param ours Current head version
+     *  @param theirs Other head version
+     */
+    private static void assertMerge(byte[] expected, boolean clean,
+                                    byte[] base, byte[] ours, byte[] theirs)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(clean, MergeText.merge(base, ours, theirs, out));
+        assertEquals(new String(expected, StandardCharsets.UTF_8),
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    /** @return The version of Y rebuilt from X by replacing each of the
+     *  HUNKS of X with its lines of Y
+     *  @param x Old version
+     *  @param y New version
+     *  @param hunks Differences from X to Y
+     */
+    private static byte[] apply(Diff.Lines x, Diff.Lines y,
+                                List<Diff.Hunk> hunks) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = 0;
+        for (Diff.Hunk h : hunks) {
+            assertTrue(h.aStart() >= pos);
+            x.write(out, pos, h.aStart(), null);
+            y.write(out, h.bStart(), h.bEnd(), null);
+            pos = h.aEnd();
+        }
+        x.write(out, pos, x.size(), null);
+        return out.toByteArray();
+    }
+
+    /** @return Length of a longest common subsequence of the lines of X
+     *  and Y
+     *  @param x A version
+     *  @param y Another version
+     */
+    private static int lcs(Diff.Lines x, Diff.Lines y) {
+        int[][] best = new int[x.size() + 1][y.size() + 1];
+        for (int i = x.size() - 1; i >= 0; i -= 1) {
+            for (int j = y.size() - 1; j >= 0; j -= 1) {
+                best[i][j] = x.sameLine(i, y, j) ? best[i + 1][j + 1] + 1
+                        : Math.max(best[i + 1][j], best[i][j + 1]);
+            }
+        }
+        return best[0][0];
+    }
+
+    /** @return Random lines drawn from a few short ones, so that versions
+     *  share many, sometimes without a final newline
+     *  @param random Source of the lines
+     */
+    private static byte[] text(Random random) {
+        StringBuilder s = new StringBuilder();
+        for (int n = random.nextInt(MAX_LINES); n > 0; n -= 1) {
+            s.append((char) ('a' + random.nextInt(LINE_KINDS))).append('\n');
+        }
+        if (s.length() > 0 && random.nextInt(4) == 0) {
+            s.setLength(s.length() - 1);
+        }
+        return bytes(s.toString());
+    }
+
+    /** @return Lines of S
+     *  @param s Text
+     */
+    private static Diff.Lines lines(String s) {
+        return new Diff.Lines(bytes(s));
+    }
+
+    /** @return S as UTF-8
+     *  @param s Text
+     */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Seed of the random versions. */
+    private static final long SEED = 23;
+
+    /** Number of random versions compared. */
+    private static final int TRIALS = 1000;
+
+    /** Most lines in a random version. */
+    private static final int MAX_LINES = 40;
+
+    /** Number of different random lines. */
+    private static final int LINE_KINDS = 5;
+}
@@ -0,0 +1,604 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Optional watcher of the working tree, and the commands' view of what
+ *  it has seen.
+ *
+ *  The watcher is a separate, long-running process started with
+ *  "watch".  It registers every directory of the working tree with a
+ *  WatchService and appends the path of each file or directory that is
+ *  created, changed or deleted to a log:
+ *      fsmonitor -- [magic:4][version:4][session:8] header followed by
+ *                   [kind:1][length:2][UTF-8 path] records.
+ *  While running it holds a lock on fsmonitor.lock, which is how
+ *  commands know the log is being kept up to date.
+ *
+ *  A command that wants the changes first creates a cookie file in
+ *  .gitlet and waits for the watcher to log it, so that every change
+ *  made before the command started is in the log ahead of the cookie.
+ *  It then reads the records after the offset saved by the last command
+ *  that did a full status, along with that command's list of working
+ *  files:
+ *      fsmonitor-state -- [magic:4][session:8][offset:8][count:4]
+ *                         followed by count [length:2][UTF-8 path].
+ *  If there is no watcher, the log was restarted, the watcher lost
+ *  events, or it does not answer in time, the command falls back to a
+ *  full scan.
+ *  @author Ishil Puri
+ */
+class FsMonitor {
+
+    /** Creates the monitor of the repository whose files are in DIR.
+     *  @param dir The .gitlet directory
+     */
+    FsMonitor(File dir) {
+        _dir = dir;
+        _log = new File(dir, "fsmonitor");
+        _lock = new File(dir, "fsmonitor.lock");
+        _state = new File(dir, "fsmonitor-state");
+    }
+
+    /** Watches the working tree until the repository is deleted or the
+     *  process is stopped. */
+    void watch() {
+        try (FileChannel lock = FileChannel.open(_lock.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock held = lock.tryLock();
+             WatchService ws = FileSystems.getDefault().newWatchService()) {
+            if (held == null) {
+                throw Utils.error("A watcher is already running.");
+            }
+            _ws = ws;
+            register(Repository.CWD.toPath(), "");
+            WatchKey cookies = _dir.toPath().register(ws,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+            FileChannel log = restart();
+            System.out.println("Watching " + _prefixes.size()
+                    + " directories.");
+            try {
+                while (true) {
+                    WatchKey key = ws.take();
+                    ByteBuffer out = ByteBuffer.allocate(BATCH);
+                    if (key == cookies) {
+                        List<WatchEvent<?>> acks = key.pollEvents();
+                        for (WatchKey k : new ArrayList<>(_prefixes.keySet())) {
+                            out = logEvents(k, log, out);
+                        }
+                        for (WatchEvent<?> ev : acks) {
+                            String name = String.valueOf(ev.context());
+                            if (name.startsWith(COOKIE)) {
+                                out = record(log, out, ACK, name);
+                            }
+                        }
+                    } else {
+                        out = logEvents(key, log, out);
+                    }
+                    write(log, out);
+                    if (!key.reset()) {
+                        unregister(_prefixes.get(key));
+                        if (key == cookies || !_dir.isDirectory()) {
+                            return;
+                        }
+                    }
+                    if (log.size() > LIMIT) {
+                        log.close();
+                        log = restart();
+                    }
+                }
+            } finally {
+                log.close();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot watch the working directory.");
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** @return OUT with a record added for each event pending on KEY,
+     *  registering any directory created and forgetting any deleted
+     *  @param key Key of a directory of the working tree
+     *  @param log Log being appended to
+     *  @param out Records not yet written
+     */
+    private ByteBuffer logEvents(WatchKey key, FileChannel log,
+                                 ByteBuffer out) throws IOException {
+        String prefix = _prefixes.get(key);
+        Path root = Repository.CWD.toPath();
+        for (WatchEvent<?> ev : key.pollEvents()) {
+            if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {
+                out = record(log, out, OVERFLOW, "");
+                continue;
+            }
+            String name = String.valueOf(ev.context());
+            if (prefix == null || prefix.isEmpty() && name.equals(GITLET)) {
+                continue;
+            }
+            Path p = root.resolve(prefix + name);
+            if (ev.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                register(p, prefix + name + "/");
+            } else if (ev.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                unregister(prefix + name + "/");
+            }
+            out = record(log, out, PATH, prefix + name);
+        }
+        return out;
+    }
+
+    /** @return What the watcher has seen since the last full status, or
+     *  null if no watcher is running.  The state file is read once, and
+     *  each poll for the cookie reads only what was appended to the log
+     *  since the last. */
+    View view() {
+        if (!running()) {
+            return null;
+        }
+        File cookie = new File(_dir, COOKIE
+                + Long.toHexString(RANDOM.nextLong()));
+        try (FileChannel log = FileChannel.open(_log.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER);
+            while (head.hasRemaining()
+                    && log.read(head, head.position()) > 0) {
+                continue;
+            }
+            head.flip();
+            if (head.remaining() < HEADER || head.getInt() != MAGIC
+                    || head.getInt() != VERSION) {
+                return new View(0, 0, null, null);
+            }
+            long session = head.getLong();
+            ByteBuffer state = _state.isFile()
+                    ? ByteBuffer.wrap(Utils.readContents(_state)) : null;
+            boolean known = state != null
+                    && state.remaining() >= STATE_HEADER
+                    && state.getInt() == MAGIC && state.getLong() == session;
+            long from = known ? state.getLong() : HEADER;
+            if (from < HEADER || from > log.size()) {
+                known = false;
+                from = HEADER;
+            }
+            Tail tail = new Tail(log, session, from, cookie.getName(), known);
+            cookie.createNewFile();
+            long deadline = System.nanoTime() + TIMEOUT;
+            while (System.nanoTime() < deadline && !tail.restarted()) {
+                long end = tail.poll();
+                if (end >= 0) {
+                    return tail.known() ? new View(session, end,
+                            tail.changed(), paths(state))
+                            : new View(session, end, null, null);
+                }
+                Thread.sleep(1);
+            }
+        } catch (IOException | InterruptedException excp) {
+            return new View(0, 0, null, null);
+        } finally {
+            cookie.delete();
+        }
+        return new View(0, 0, null, null);
+    }
+
+    /** @return Whether a watcher holds the lock */
+    private boolean running() {
+        if (!_lock.isFile()) {
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(_lock.toPath(),
+                StandardOpenOption.WRITE);
+             FileLock free = ch.tryLock()) {
+            return free == null;
+        } catch (OverlappingFileLockException excp) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Reader of the records appended to the log while a command waits
+     *  for its cookie. */
+    private static final class Tail {
+        /** Starts reading LOG, of session SESSION, at offset FROM, looking
+         *  for the acknowledgement of COOKIE.
+         *  @param log Open log
+         *  @param session Session of the log
+         *  @param from Offset of the first record to read
+         *  @param cookie Name of the cookie file
+         *  @param known Whether the changes before FROM are accounted for
+         */
+        Tail(FileChannel log, long session, long from, String cookie,
+             boolean known) {
+            _log = log;
+            _session = session;
+            _end = from;
+            _cookie = cookie;
+            _known = known;
+        }
+
+        /** @return Offset just past the acknowledgement of the cookie,
+         *  after reading every record appended since the last call, or
+         *  -1 if it has not yet been logged */
+        long poll() throws IOException {
+            long size = _log.size();
+            while (_end < size) {
+                int n = _log.read(_buf, _end);
+                if (n <= 0) {
+                    break;
+                }
+                _end += n;
+                _buf.flip();
+                boolean acked = parse();
+                long at = _end - _buf.remaining();
+                _buf.compact();
+                if (acked) {
+                    return at;
+                }
+            }
+            return -1;
+        }
+
+        /** @return Whether the log was started again on a new session, so
+         *  that offsets read so far no longer mean anything */
+        boolean restarted() throws IOException {
+            ByteBuffer id = ByteBuffer.allocate(SESSION_BYTES);
+            while (id.hasRemaining()
+                    && _log.read(id, SESSION_AT + id.position()) > 0) {
+                continue;
+            }
+            return id.hasRemaining() || id.getLong(0) != _session
+                    || _log.size() < _end;
+        }
+
+        /** @return Whether every change read so far was logged */
+        boolean known() {
+            return _known;
+        }
+
+        /** @return Paths logged as changed so far */
+        TreeSet<String> changed() {
+            return _changed;
+        }
+
+        /** @return Whether the cookie's acknowledgement was reached,
+         *  after taking every whole record from the buffer up to it */
+        private boolean parse() {
+            while (_buf.remaining() >= RECORD) {
+                int at = _buf.position();
+                byte kind = _buf.get(at);
+                int length = _buf.getShort(at + 1) & 0xffff;
+                if (RECORD + length > _buf.remaining()) {
+                    return false;
+                }
+                String path = new String(_buf.array(), at + RECORD, length,
+                        StandardCharsets.UTF_8);
+                _buf.position(at + RECORD + length);
+                if (kind == OVERFLOW) {
+                    _known = false;
+                } else if (kind == PATH) {
+                    _changed.add(path);
+                } else if (kind == ACK && path.equals(_cookie)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Open log. */
+        private final FileChannel _log;
+
+        /** Session of the log when reading started. */
+        private final long _session;
+
+        /** Name of the cookie file. */
+        private final String _cookie;
+
+        /** Offset in the log just past the bytes read. */
+        private long _end;
+
+        /** Whether the changes read so far are all that happened. */
+        private boolean _known;
+
+        /** Paths logged as changed. */
+        private final TreeSet<String> _changed = new TreeSet<>();
+
+        /** Bytes read and not yet parsed, with room for a longest record
+         *  besides. */
+        private final ByteBuffer _buf = ByteBuffer.allocate(2 * BATCH);
+    }
+
+    /** @return Working files listed in the rest of STATE
+     *  @param state Contents of the state file, positioned at the count
+     */
+    private static TreeSet<String> paths(ByteBuffer state) {
+        TreeSet<String> result = new TreeSet<>();
+        for (int n = state.getInt(); n > 0; n -= 1) {
+            int length = state.getShort() & 0xffff;
+            result.add(new String(state.array(), state.position(), length,
+                    StandardCharsets.UTF_8));
+            state.position(state.position() + length);
+        }
+        return result;
+    }
+
+    /** Registers DIR, named PREFIX, and every directory under it except
+     *  .gitlet with the watch service.
+     *  @param dir Directory to register
+     *  @param prefix Its path relative to the root, ending in '/', or ""
+     */
+    private void register(Path dir, String prefix) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d,
+                    BasicFileAttributes attrs) throws IOException {
+                if (d.getFileName() != null
+                        && d.getFileName().toString().equals(GITLET)
+                        && d.getParent().equals(Repository.CWD.toPath())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                String rel = prefix;
+                for (Path name : dir.relativize(d)) {
+                    if (!name.toString().isEmpty()) {
+                        rel += name + "/";
+                    }
+                }
+                unregister(rel);
+                WatchKey key = d.register(_ws,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                _prefixes.put(key, rel);
+                _keys.put(rel, key);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Stops watching the directory named PREFIX and every directory
+     *  under it, whose keys would otherwise name the wrong paths if it
+     *  was moved.
+     *  @param prefix Path of the directory ending in '/', or null
+     */
+    private void unregister(String prefix) {
+        if (prefix == null || !_keys.containsKey(prefix)) {
+            return;
+        }
+        Iterator<Map.Entry<String, WatchKey>> it =
+                _keys.tailMap(prefix).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, WatchKey> e = it.next();
+            if (!e.getKey().startsWith(prefix)) {
+                break;
+            }
+            e.getValue().cancel();
+            _prefixes.remove(e.getValue());
+            it.remove();
+        }
+    }
+
+    /** @return The log, emptied and started on a new session */
+    private FileChannel restart() throws IOException {
+        FileChannel log = FileChannel.open(_log.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        write(log, ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION)
+                .putLong(RANDOM.nextLong()));
+        return log;
+    }
+
+    /** @return OUT with a record of KIND for PATH added, after writing
+     *  out to LOG if it was full
+     *  @param log Log being appended to
+     *  @param out Records not yet written
+     *  @param kind Record kind
+     *  @param path Path, or cookie name
+     */
+    private static ByteBuffer record(FileChannel log, ByteBuffer out,
+                                     byte kind, String path)
+        throws IOException {
+        byte[] raw = path.getBytes(StandardCharsets.UTF_8);
+        if (out.remaining() < RECORD + raw.length) {
+            write(log, out);
+            out = ByteBuffer.allocate(Math.max(BATCH, RECORD + raw.length));
+        }
+        return out.put(kind).putShort((short) raw.length).put(raw);
+    }
+
+    /** Appends the records in OUT to LOG.
+     *  @param log Log being appended to
+     *  @param out Records, not yet flipped
+     */
+    private static void write(FileChannel log, ByteBuffer out)
+        throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            log.write(out, log.size());
+        }
+        out.clear();
+    }
+
+    /** What the watcher saw between the last full status and the start
+     *  of a command. */
+    class View {
+        /** Creates a view.
+         * @param session Session of the log
+         * @param offset Offset in the log just past the command's cookie
+         * @param changed Paths that may have changed, or null if every
+         * file may have
+         * @param files Working files at the last full status, or null
+         */
+        View(long session, long offset, TreeSet<String> changed,
+             TreeSet<String> files) {
+            _session = session;
+            _offset = offset;
+            _changed = changed;
+            _known = files;
+        }
+
+        /** @return Paths of files and directories that may have changed
+         *  since the last full status, or null if every file may have */
+        TreeSet<String> changed() {
+            return _changed;
+        }
+
+        /** @return Sorted paths of every working file, found from the
+         *  last full status and the changes if possible, or by walking
+         *  the working tree */
+        List<String> files() {
+            if (_files != null) {
+                return _files;
+            }
+            if (_changed == null) {
+                _files = WorkTree.files(Repository.CWD);
+                return _files;
+            }
+            for (String path : _changed) {
+                _known.remove(path);
+                _known.subSet(path + "/", path + "0").clear();
+                File f = Utils.join(Repository.CWD, path);
+                if (f.isFile()) {
+                    _known.add(path);
+                } else if (f.isDirectory()) {
+                    for (String sub : WorkTree.files(f)) {
+                        _known.add(path + "/" + sub);
+                    }
+                }
+            }
+            _files = new ArrayList<>(_known);
+            return _files;
+        }
+
+        /** Records that every working file was checked as of this view,
+         *  so that the next command need only look at later changes. */
+        void save() {
+            if (_session == 0) {
+                return;
+            }
+            List<String> files = files();
+            ArrayList<byte[]> names = new ArrayList<>(files.size());
+            int size = STATE_HEADER + 4;
+            for (String path : files) {
+                byte[] raw = path.getBytes(StandardCharsets.UTF_8);
+                names.add(raw);
+                size += 2 + raw.length;
+            }
+            ByteBuffer out = ByteBuffer.allocate(size);
+            out.putInt(MAGIC).putLong(_session).putLong(_offset)
+                    .putInt(names.size());
+            for (byte[] raw : names) {
+                out.putShort((short) raw.length).put(raw);
+            }
+            Utils.writeContents(_state, out.array());
+        }
+
+        /** Session of the log, or 0 if the watcher did not answer. */
+        private final long _session;
+
+        /** Offset in the log just past the command's cookie. */
+        private final long _offset;
+
+        /** Paths that may have changed, or null. */
+        private final TreeSet<String> _changed;
+
+        /** Working files at the last full status, or null. */
+        private final TreeSet<String> _known;
+
+        /** Sorted paths of every working file, once found. */
+        private List<String> _files;
+    }
+
+    /** Magic number at the start of the log and state files ("GFSM"). */
+    private static final int MAGIC = 0x4746534d;
+
+    /** Log format version. */
+    private static final int VERSION = 1;
+
+    /** Bytes in the log header. */
+    private static final int HEADER = 16;
+
+    /** Offset of the session number in the log. */
+    private static final int SESSION_AT = 8;
+
+    /** Bytes of a session number. */
+    private static final int SESSION_BYTES = 8;
+
+    /** Bytes in the state header before the path count. */
+    private static final int STATE_HEADER = 20;
+
+    /** Bytes in a record before its path. */
+    private static final int RECORD = 3;
+
+    /** Kind of a record naming a changed path. */
+    private static final byte PATH = 0;
+
+    /** Kind of a record saying that events were lost. */
+    private static final byte OVERFLOW = 1;
+
+    /** Kind of a record acknowledging a cookie. */
+    private static final byte ACK = 2;
+
+    /** Start of the names of cookie files. */
+    private static final String COOKIE = "fsmonitor-cookie-";
+
+    /** Name of the repository directory, never watched. */
+    private static final String GITLET = ".gitlet";
+
+    /** Bytes of records written at once. */
+    private static final int BATCH = 1 << 16;
+
+    /** Size past which the log is restarted. */
+    private static final long LIMIT = 1L << 26;
+
+    /** Nanoseconds a command waits for its cookie to be logged. */
+    private static final long TIMEOUT = 2_000_000_000L;
+
+    /** Source of session numbers and cookie names. */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** The .gitlet directory. */
+    private final File _dir;
+
+    /** Watch service of a running watcher. */
+    private WatchService _ws;
+
+    /** Path of each watched directory ending in '/', or "", by key. */
+    private final HashMap<WatchKey, String> _prefixes = new HashMap<>();
+
+    /** Key of each watched directory, by path. */
+    private final TreeMap<String, WatchKey> _keys = new TreeMap<>();
+
+    /** Path of the log. */
+    private final File _log;
+
+    /** Path of the lock held by the watcher. */
+    private final File _lock;
+
+    /** Path of the state saved by the last full status. */
+    private final File _state;
+}
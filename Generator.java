@@ -0,0 +1,495 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+/** Builds large synthetic repositories for load tests, benchmarks and
+ *  profiling runs, in the current directory.
+ *
+ *  Commits are made with the same Commit and Tree code the commands use,
+ *  but their files are never staged or written to the working tree, so
+ *  history of any length costs only the objects it stores.  The first
+ *  commit after the initial one adds FILES files, numbered and placed in
+ *  directories of at most FANOUT entries.  Each of the next COMMITS - 1
+ *  commits goes to master or to one of BRANCHES other branches, chosen
+ *  at random, and gives new contents to about CHANGES files.  A branch
+ *  forks from master when it gets its first commit, and after every
+ *  MERGEEVERY of its commits it is merged into master.  Each branch
+ *  changes only its own share of the files, so those merges never
+ *  conflict.  File sizes are drawn from a log-normal distribution, and
+ *  contents are lines of words, so they compress about as well as
+ *  source text.
+ *
+ *  Everything is drawn from one random sequence seeded by SEED, and
+ *  commit times advance by a fixed step, so the same settings always
+ *  give the same commit ids.  Commits are planned in batches on one
+ *  thread; the contents of each batch's files are then made, hashed and
+ *  compressed in parallel, and stored in order.  Finally the working
+ *  tree is checked out at the head of master, unless that is turned
+ *  off, and the repository is saved, ready for any command.
+ *  @author Ishil Puri
+ */
+public class Generator {
+
+    /** Usage: java gitlet.Generator [SETTING=VALUE]..., where each
+     *  SETTING is one of seed, files, fanout, size, spread, maxsize,
+     *  commits, changes, branches, mergeevery and checkout.  Generates a
+     *  repository in the current directory.
+     *  @param args Settings
+     */
+    public static void main(String... args) throws IOException {
+        Generator gen = new Generator();
+        try {
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    throw Utils.error("Settings have the form name=value.");
+                }
+                gen.set(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+            long start = System.nanoTime();
+            gen.generate();
+            System.out.printf("Generated %d commits of %d files in %.1f s.%n",
+                    gen._made, gen._files,
+                    (System.nanoTime() - start) / 1e9);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /** Changes the setting named NAME to VALUE.
+     *  @param name Name of the setting, as main takes it
+     *  @param value New value
+     */
+    public void set(String name, String value) {
+        try {
+            switch (name) {
+            case "seed":
+                _seed = Long.parseLong(value);
+                break;
+            case "files":
+                _files = atLeast(1, value);
+                break;
+            case "fanout":
+                _fanout = atLeast(2, value);
+                break;
+            case "size":
+                _size = atLeast(0, value);
+                break;
+            case "spread":
+                _spread = Double.parseDouble(value);
+                break;
+            case "maxsize":
+                _maxSize = atLeast(0, value);
+                break;
+            case "commits":
+                _commits = atLeast(1, value);
+                break;
+            case "changes":
+                _changes = atLeast(1, value);
+                break;
+            case "branches":
+                _branches = atLeast(0, value);
+                break;
+            case "mergeevery":
+                _mergeEvery = atLeast(0, value);
+                break;
+            case "checkout":
+                _checkout = Boolean.parseBoolean(value);
+                break;
+            default:
+                throw Utils.error("No setting named %s exists.", name);
+            }
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Setting %s must be a number.", name);
+        }
+    }
+
+    /** Creates a repository in the current directory and fills it in.
+     *  @return The repository, as saved
+     */
+    public Repository generate() throws IOException {
+        if (_files <= _branches) {
+            throw Utils.error("There must be more files than branches.");
+        }
+        Repository repo = new Repository();
+        repo.init();
+        _random = new Random(_seed);
+        _heads = new Commit[_branches + 1];
+        _unmerged = new ArrayList<>();
+        _sinceMerge = new int[_branches + 1];
+        _time = START;
+        _made = _planned = _flushed = 0;
+        _heads[0] = Commit.read(repo.getHEAD());
+        for (int b = 0; b <= _branches; b += 1) {
+            _unmerged.add(new TreeMap<>());
+        }
+        addFiles();
+        while (_planned < _commits) {
+            runBatch();
+        }
+        if (_checkout) {
+            repo.reset(_heads[0].getCommitUID());
+        } else {
+            repo.setHead(MASTER, _heads[0].getCommitUID());
+        }
+        for (int b = 1; b <= _branches; b += 1) {
+            if (_heads[b] == null) {
+                _heads[b] = _heads[0];
+            }
+            repo.setHead(branchName(b), _heads[b].getCommitUID());
+        }
+        repo.close();
+        Utils.writeObject(Repository.getRepoObj(), repo);
+        return repo;
+    }
+
+    /** @return Id of the head of branch NAME as generated, or null if
+     *  there is no such branch
+     *  @param name Branch name
+     */
+    public String head(String name) {
+        for (int b = 0; b < _heads.length; b += 1) {
+            if (branchName(b).equals(name)) {
+                return _heads[b].getCommitUID();
+            }
+        }
+        return null;
+    }
+
+    /** @return Paths of the generated files, in the order they are
+     *  numbered */
+    public List<String> paths() {
+        ArrayList<String> result = new ArrayList<>(_files);
+        for (int i = 0; i < _files; i += 1) {
+            result.add(path(i));
+        }
+        return result;
+    }
+
+    /** @return Name of branch B, numbered from 0 for master
+     *  @param b Branch number
+     */
+    public static String branchName(int b) {
+        return b == 0 ? MASTER : "b" + b;
+    }
+
+    /** Makes the commit adding every file, a batch of files at a time. */
+    private void addFiles() throws IOException {
+        Commit c = next(0, INITIAL_MESSAGE);
+        ArrayList<Change> batch = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 0; i < _files; i += 1) {
+            Change ch = plan(i);
+            batch.add(ch);
+            bytes += ch._size;
+            if (bytes >= BATCH_BYTES || i == _files - 1) {
+                store(batch);
+                for (Change done : batch) {
+                    c.track(done._path, done._id);
+                }
+                batch.clear();
+                bytes = 0;
+            }
+        }
+        save(0, c);
+        _planned = 1;
+    }
+
+    /** Plans up to BATCH_COMMITS commits, makes the contents of the
+     *  files they change in parallel, and then makes the commits. */
+    private void runBatch() throws IOException {
+        ArrayList<Change> changes = new ArrayList<>();
+        ArrayList<int[]> commits = new ArrayList<>();
+        long bytes = 0;
+        for (; commits.size() < BATCH_COMMITS && _planned < _commits
+                 && bytes < BATCH_BYTES; _planned += 1) {
+            int b = _random.nextInt(_branches + 1);
+            int n = 1 + _random.nextInt(2 * _changes - 1);
+            int share = (_files - b + _branches) / (_branches + 1);
+            commits.add(new int[] {b, changes.size(), n});
+            for (int j = 0; j < n; j += 1) {
+                Change ch = plan(b + (_branches + 1)
+                        * _random.nextInt(share));
+                changes.add(ch);
+                bytes += ch._size;
+            }
+        }
+        store(changes);
+        for (int[] plan : commits) {
+            int b = plan[0];
+            List<Change> mine = changes.subList(plan[1], plan[1] + plan[2]);
+            Commit c = next(b, "Change " + mine.get(0)._path
+                    + (mine.size() > 1 ? " and " + (mine.size() - 1)
+                        + " more" : ""));
+            for (Change ch : mine) {
+                c.track(ch._path, ch._id);
+                if (b != 0) {
+                    _unmerged.get(b).put(ch._path, ch._id);
+                }
+            }
+            save(b, c);
+            if (b != 0 && _mergeEvery > 0) {
+                _sinceMerge[b] += 1;
+                if (_sinceMerge[b] == _mergeEvery) {
+                    merge(b);
+                }
+            }
+            if (_made - _flushed >= FLUSH_COMMITS) {
+                Repository.OBJECTS.flush();
+                _flushed = _made;
+            }
+        }
+    }
+
+    /** Merges branch B into master, taking the contents of every file
+     *  B changed since it was last merged.
+     *  @param b Branch number
+     */
+    private void merge(int b) throws IOException {
+        Commit c = next(0, "Merged " + branchName(b) + " into "
+                + MASTER + ".");
+        for (Map.Entry<String, String> e : _unmerged.get(b).entrySet()) {
+            c.track(e.getKey(), e.getValue());
+        }
+        c.setMergeParent(_heads[b].getCommitUID());
+        save(0, c);
+        _unmerged.get(b).clear();
+        _sinceMerge[b] = 0;
+    }
+
+    /** @return New commit on branch B with MESSAGE, starting from its
+     *  head, or from master's if B has no commits of its own yet
+     *  @param b Branch number
+     *  @param message Commit message
+     */
+    private Commit next(int b, String message) {
+        if (_heads[b] == null) {
+            _heads[b] = _heads[0];
+        }
+        Commit c = new Commit(message, _heads[b].getCommitUID());
+        c.inherit(_heads[b]);
+        _time += STEP;
+        c.setTime(_time);
+        return c;
+    }
+
+    /** Saves C as the new head of branch B.
+     *  @param b Branch number
+     *  @param c New commit
+     */
+    private void save(int b, Commit c) throws IOException {
+        c.saveCommit();
+        _heads[b] = c;
+        _made += 1;
+    }
+
+    /** @return A change giving file I new contents, of a size drawn
+     *  from the size distribution
+     *  @param i File number
+     */
+    private Change plan(int i) {
+        double size = _size * Math.exp(_spread * _random.nextGaussian());
+        return new Change(path(i), _random.nextLong(),
+                (int) Math.min(_maxSize, Math.round(size)));
+    }
+
+    /** Makes, hashes and compresses the contents of every change in
+     *  BATCH in parallel, then stores them in order.
+     *  @param batch Planned changes
+     */
+    private static void store(List<Change> batch) {
+        byte[][] records = new byte[batch.size()][];
+        Arrays.parallelSetAll(records, k -> {
+            Change ch = batch.get(k);
+            byte[] data = contents(ch._seed, ch._size);
+            ch._id = Utils.sha1Bytes(data);
+            return Repository.OBJECTS.encode(ObjectStore.BLOB, data);
+        });
+        for (int k = 0; k < records.length; k += 1) {
+            Repository.OBJECTS.writeRecord(batch.get(k)._id, records[k]);
+        }
+    }
+
+    /** @return SIZE bytes of lines of words drawn using SEED
+     *  @param seed Seed of the contents
+     *  @param size Length of the contents
+     */
+    private static byte[] contents(long seed, int size) {
+        SplittableRandom r = new SplittableRandom(seed);
+        byte[] data = new byte[size];
+        int at = 0, line = 0;
+        while (at < size) {
+            byte[] word = WORDS[r.nextInt(WORDS.length)];
+            int n = Math.min(word.length, size - at);
+            System.arraycopy(word, 0, data, at, n);
+            at += n;
+            line += n;
+            if (at < size) {
+                data[at] = (byte) (line >= LINE ? '\n' : ' ');
+                line = line >= LINE ? 0 : line + 1;
+                at += 1;
+            }
+        }
+        return data;
+    }
+
+    /** @return Path of file I, in directories of at most _fanout
+     *  entries
+     *  @param i File number
+     */
+    private String path(int i) {
+        StringBuilder dirs = new StringBuilder();
+        for (int d = i / _fanout; d > 0; d /= _fanout) {
+            dirs.insert(0, "d" + (d % _fanout) + "/");
+        }
+        return dirs + "f" + i;
+    }
+
+    /** @return VALUE as an int, which must be at least MIN
+     *  @param min Smallest allowed value
+     *  @param value Setting as given
+     */
+    private static int atLeast(int min, String value) {
+        int n = Integer.parseInt(value);
+        if (n < min) {
+            throw Utils.error("Setting must be at least %d.", min);
+        }
+        return n;
+    }
+
+    /** New contents for one file, planned on one thread and made on
+     *  another. */
+    private static final class Change {
+        /** Creates a change.
+         *  @param path Path of the file
+         *  @param seed Seed of its contents
+         *  @param size Length of its contents
+         */
+        Change(String path, long seed, int size) {
+            _path = path;
+            _seed = seed;
+            _size = size;
+        }
+
+        /** Path of the file. */
+        private final String _path;
+
+        /** Seed of its contents. */
+        private final long _seed;
+
+        /** Length of its contents. */
+        private final int _size;
+
+        /** Blob id of its contents, once they are made. */
+        private String _id;
+    }
+
+    /** Name of the main branch. */
+    private static final String MASTER = "master";
+
+    /** Message of the commit adding every file. */
+    public static final String INITIAL_MESSAGE = "initial files";
+
+    /** Time of the first generated commit: 2020-01-01T00:00:00Z. */
+    private static final long START = 1577836800000L;
+
+    /** Milliseconds between generated commits. */
+    private static final long STEP = 60_000;
+
+    /** Most commits planned at a time. */
+    private static final int BATCH_COMMITS = 4096;
+
+    /** Most bytes of file contents made at a time. */
+    private static final long BATCH_BYTES = 64 << 20;
+
+    /** Commits between index flushes, which bound the objects held in
+     *  memory but rewrite the whole index. */
+    private static final int FLUSH_COMMITS = 1 << 16;
+
+    /** Characters after which a line of contents is ended. */
+    private static final int LINE = 72;
+
+    /** Words file contents are made of, the same in every run. */
+    private static final byte[][] WORDS = new byte[512][];
+
+    static {
+        Random r = new Random(0);
+        for (int i = 0; i < WORDS.length; i += 1) {
+            byte[] w = new byte[2 + r.nextInt(9)];
+            for (int j = 0; j < w.length; j += 1) {
+                w[j] = (byte) ('a' + r.nextInt(26));
+            }
+            WORDS[i] = w;
+        }
+    }
+
+    /** Seed of everything drawn. */
+    private long _seed = 1;
+
+    /** Number of files. */
+    private int _files = 1000;
+
+    /** Most entries in one directory. */
+    private int _fanout = 32;
+
+    /** Median file size in bytes. */
+    private int _size = 4096;
+
+    /** Standard deviation of the log of file sizes; 0 makes every file
+     *  the median size. */
+    private double _spread = 1;
+
+    /** Largest file size in bytes. */
+    private int _maxSize = 1 << 24;
+
+    /** Number of commits, counting the one adding every file but not
+     *  merges. */
+    private int _commits = 100;
+
+    /** Mean number of files each commit changes. */
+    private int _changes = 4;
+
+    /** Number of branches besides master. */
+    private int _branches = 0;
+
+    /** Commits on a branch between its merges into master, or 0 for no
+     *  merges. */
+    private int _mergeEvery = 0;
+
+    /** Whether to check out the head of master at the end. */
+    private boolean _checkout = true;
+
+    /** Source of every choice and of the seeds of file contents. */
+    private Random _random;
+
+    /** Head of each branch, master first, or null before a branch has
+     *  commits of its own. */
+    private Commit[] _heads;
+
+    /** Blob id of each file a branch changed since it was last merged,
+     *  by path, for each branch. */
+    private ArrayList<TreeMap<String, String>> _unmerged;
+
+    /** Commits on each branch since it was last merged. */
+    private int[] _sinceMerge;
+
+    /** Time of the last commit made. */
+    private long _time;
+
+    /** Number of commits made, merges included. */
+    private int _made;
+
+    /** Number of commits planned, merges not included. */
+    private int _planned;
+
+    /** Value of _made when the object index was last flushed. */
+    private int _flushed;
+}
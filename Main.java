@@ -13,6 +13,35 @@ public class Main {
      *  java gitlet.Main add hello.txt
      *  */
     public static void main(String... args) throws IOException {
+        if (!run(args)) {
+            System.exit(0);
+        }
+    }
+
+    /** Runs the command ARGS, printing any error it reports.  If the
+     *  first argument is --trace, it is dropped, and once the command is
+     *  done a summary of where its time went is printed.
+     *  @param args Command and its operands
+     *  @return Whether the command succeeded
+     */
+    static boolean run(String... args) throws IOException {
+        boolean trace = args.length > 0 && args[0].equals("--trace");
+        if (trace) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        Trace.start(args.length > 0 ? args[0] : "");
+        try {
+            return dispatch(args);
+        } finally {
+            Trace.finish(trace);
+        }
+    }
+
+    /** Runs the command ARGS, printing any error it reports.
+     *  @param args Command and its operands
+     *  @return Whether the command succeeded
+     */
+    private static boolean dispatch(String... args) throws IOException {
         try {
             if (args.length == 0) {
                 throw Utils.error("Please enter a command.");
@@ -37,7 +66,7 @@ public class Main {
                     repo.globalLog();
                     break;
                 case "find":
-                    repo.find(args[1]);
+                    repo.find(Arrays.copyOfRange(args, 1, args.length));
                     break;
                 case "status":
                     repo.status();
@@ -45,6 +74,9 @@ public class Main {
                 case "checkout":
                     repo.checkout(Arrays.copyOfRange(args, 1, args.length));
                     break;
+                case "diff":
+                    repo.diff(Arrays.copyOfRange(args, 1, args.length));
+                    break;
                 case "branch":
                     repo.branch(args[1]);
                     break;
@@ -57,30 +89,67 @@ public class Main {
                 case "merge":
                     repo.merge(args[1]);
                     break;
+                case "migrate":
+                    repo.migrate();
+                    break;
+                case "watch":
+                    repo.watch();
+                    break;
+                case "serve":
+                    new Server(Utils.join(Repository.GITFOLDER,
+                            "server.sock")).serve();
+                    break;
+                case "config":
+                    repo.config(args[1], args[2]);
+                    break;
                 default:
                     throw Utils.error("No command with that name exists.");
                 }
             }
             saveRepo();
+            return true;
         } catch (GitletException e) {
             System.out.println(e.getMessage());
-            System.exit(0);
+            return false;
         }
     }
 
-    /** Load repo object from saved state. */
+    /** Load repo object from saved state, unless it is still loaded
+     *  from an earlier command run by this process. */
     public static void loadRepo() {
-        if (!Repository.getRepoObj().exists()) {
-            throw Utils.error("Not in an initialized Gitlet directory.");
+        try (Trace.Span s = Trace.phase("load repository")) {
+            if (!loaded) {
+                if (!Repository.getRepoObj().exists()) {
+                    throw Utils.error("Not in an initialized Gitlet"
+                            + " directory.");
+                }
+                repo = Utils.readObject(Repository.getRepoObj(),
+                        Repository.class);
+                loaded = true;
+            }
+            repo.open();
         }
-        repo = Utils.readObject(Repository.getRepoObj(), Repository.class);
+    }
+
+    /** Forgets the loaded repo object and cached repository files, so
+     *  that the next command reads them afresh. */
+    static void unload() {
+        repo = new Repository();
+        loaded = false;
+        Repository.reload();
     }
 
     /** Save repo object to file for future use. */
     public static void saveRepo() {
-        Utils.writeObject(Repository.getRepoObj(), repo);
+        try (Trace.Span s = Trace.phase("save repository")) {
+            repo.close();
+            Utils.writeObject(Repository.getRepoObj(), repo);
+        }
     }
 
     /** Variable to track repo object. */
     private static Repository repo = new Repository();
+
+    /** Whether repo was read from the repository. */
+    private static boolean loaded;
 }
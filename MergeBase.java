@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** Finds the best common ancestors of commits by walking the commit
+ *  graph.
+ *
+ *  Both commits are walked at once, newest generation first, marking
+ *  each commit reached with the side or sides it was reached from.  A
+ *  commit reached from both sides is a common ancestor; its ancestors
+ *  are marked stale, and the walk ends once only stale commits remain.
+ *  Because a commit is always popped before its ancestors, no commit
+ *  below the oldest useful generation is ever visited.  Common
+ *  ancestors that are themselves ancestors of another are then dropped,
+ *  leaving only the best ones.
+ *  @author Ishil Puri
+ */
+class MergeBase {
+
+    /** Creates an engine walking GRAPH.
+     *  @param graph Commit graph
+     */
+    MergeBase(CommitGraph graph) {
+        _graph = graph;
+    }
+
+    /** @return Positions of the best common ancestors of the commits at
+     *  A and B, newest first; empty if they share no history
+     *  @param a Position of one commit
+     *  @param b Position of the other commit
+     */
+    int[] bases(int a, int b) {
+        if (a == b) {
+            return new int[] {a};
+        }
+        BitSet fromA = new BitSet(), fromB = new BitSet();
+        BitSet stale = new BitSet();
+        int[] found = new int[INITIAL];
+        int count = 0;
+        clear();
+        fromA.set(a);
+        push(a);
+        fromB.set(b);
+        push(b);
+        int live = 2;
+        while (live > 0) {
+            int c = pop();
+            boolean isStale = stale.get(c);
+            if (!isStale) {
+                live -= 1;
+            }
+            boolean inA = fromA.get(c), inB = fromB.get(c);
+            if (inA && inB && !isStale) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, 2 * count);
+                }
+                found[count++] = c;
+                stale.set(c);
+                isStale = true;
+            }
+            for (int p = _graph.parent(c), k = 0; k < 2;
+                 p = _graph.mergeParent(c), k += 1) {
+                if (p == CommitGraph.NONE
+                        || (fromA.get(p) || !inA) && (fromB.get(p) || !inB)
+                        && (stale.get(p) || !isStale)) {
+                    continue;
+                }
+                boolean wasQueued = fromA.get(p) || fromB.get(p);
+                boolean wasLive = wasQueued && !stale.get(p);
+                if (inA) {
+                    fromA.set(p);
+                }
+                if (inB) {
+                    fromB.set(p);
+                }
+                if (isStale) {
+                    stale.set(p);
+                }
+                if (!wasQueued) {
+                    push(p);
+                }
+                if (!stale.get(p) && !wasLive) {
+                    live += 1;
+                } else if (stale.get(p) && wasLive) {
+                    live -= 1;
+                }
+            }
+        }
+        return removeRedundant(Arrays.copyOf(found, count));
+    }
+
+    /** @return Whether the commit at A is an ancestor of, or the same
+     *  as, the commit at B
+     *  @param a Position of the possible ancestor
+     *  @param b Position of the descendant
+     */
+    boolean isAncestor(int a, int b) {
+        BitSet seen = new BitSet();
+        return reaches(b, new int[] {a}, _graph.generation(a), seen)[0];
+    }
+
+    /** @return CANDIDATES without any that is an ancestor of another,
+     *  in the same order
+     *  @param candidates Positions of common ancestors, newest first
+     */
+    private int[] removeRedundant(int[] candidates) {
+        if (candidates.length < 2) {
+            return candidates;
+        }
+        int minGen = Integer.MAX_VALUE;
+        for (int c : candidates) {
+            minGen = Math.min(minGen, _graph.generation(c));
+        }
+        boolean[] redundant = new boolean[candidates.length];
+        for (int i = 0; i < candidates.length; i += 1) {
+            if (redundant[i]) {
+                continue;
+            }
+            BitSet seen = new BitSet();
+            for (int p = _graph.parent(candidates[i]), k = 0; k < 2;
+                 p = _graph.mergeParent(candidates[i]), k += 1) {
+                if (p == CommitGraph.NONE) {
+                    continue;
+                }
+                boolean[] hit = reaches(p, candidates, minGen, seen);
+                for (int j = 0; j < hit.length; j += 1) {
+                    redundant[j] |= hit[j];
+                }
+            }
+        }
+        int n = 0;
+        for (int i = 0; i < candidates.length; i += 1) {
+            if (!redundant[i]) {
+                candidates[n++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(candidates, n);
+    }
+
+    /** @return For each of TARGETS, whether it is reached by walking
+     *  down from START, never going below generation MINGEN
+     *  @param start Position to walk from
+     *  @param targets Positions looked for
+     *  @param minGen Oldest generation worth visiting
+     *  @param seen Commits already walked, shared between calls
+     */
+    private boolean[] reaches(int start, int[] targets, int minGen,
+                              BitSet seen) {
+        boolean[] hit = new boolean[targets.length];
+        int[] stack = new int[INITIAL];
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int c = stack[--top];
+            if (seen.get(c) || _graph.generation(c) < minGen) {
+                continue;
+            }
+            seen.set(c);
+            for (int j = 0; j < targets.length; j += 1) {
+                hit[j] |= targets[j] == c;
+            }
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            }
+            for (int p = _graph.parent(c), k = 0; k < 2;
+                 p = _graph.mergeParent(c), k += 1) {
+                if (p != CommitGraph.NONE && !seen.get(p)) {
+                    stack[top++] = p;
+                }
+            }
+        }
+        return hit;
+    }
+
+    /* Queue of positions, highest generation first, kept as a binary
+     * heap of primitive ints. */
+
+    /** Empties the queue. */
+    private void clear() {
+        _size = 0;
+    }
+
+    /** Adds the commit at POS to the queue.
+     *  @param pos Commit position
+     */
+    private void push(int pos) {
+        if (_size == _heap.length) {
+            _heap = Arrays.copyOf(_heap, 2 * _size);
+        }
+        int i = _size++;
+        while (i > 0 && before(pos, _heap[(i - 1) / 2])) {
+            _heap[i] = _heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        _heap[i] = pos;
+    }
+
+    /** @return The queued commit with the highest generation, removed */
+    private int pop() {
+        int result = _heap[0];
+        int last = _heap[--_size];
+        int i = 0;
+        while (2 * i + 1 < _size) {
+            int child = 2 * i + 1;
+            if (child + 1 < _size && before(_heap[child + 1], _heap[child])) {
+                child += 1;
+            }
+            if (!before(_heap[child], last)) {
+                break;
+            }
+            _heap[i] = _heap[child];
+            i = child;
+        }
+        _heap[i] = last;
+        return result;
+    }
+
+    /** @return Whether the commit at A should be walked before that at B
+     *  @param a Commit position
+     *  @param b Commit position
+     */
+    private boolean before(int a, int b) {
+        int ga = _graph.generation(a), gb = _graph.generation(b);
+        return ga != gb ? ga > gb : a > b;
+    }
+
+    /** Initial capacity of work arrays. */
+    private static final int INITIAL = 16;
+
+    /** Graph being walked. */
+    private final CommitGraph _graph;
+
+    /** Heap of queued positions. */
+    private int[] _heap = new int[INITIAL];
+
+    /** Number of queued positions. */
+    private int _size;
+}
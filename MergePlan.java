@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/** What a merge does to each file, decided from blob ids alone.
+ *
+ *  Blob ids are hashes of file contents, so two versions of a file are
+ *  equal exactly when their ids are.  The only paths a merge can affect
+ *  are those that differ between the split point and either branch
+ *  head, which comparing their trees finds without visiting unchanged
+ *  directories.  Each such path is classified once, from the ids it has
+ *  in the split point, the current head and the other head, into one
+ *  Action.  No file contents are read; those of files both branches
+ *  changed are read only when their changes are merged.
+ *  @author Ishil Puri
+ */
+class MergePlan {
+
+    /** What a merge does with one file. */
+    enum Kind {
+        /** Keep the current branch's version, which only it changed. */
+        TAKE_OURS,
+        /** Check out and stage the other branch's version. */
+        TAKE_THEIRS,
+        /** Remove the file, which only the other branch deleted. */
+        DELETE,
+        /** Both branches changed the file, in different ways; their
+         *  changes are merged line by line where they can be. */
+        CONFLICT
+    }
+
+    /** @return Actions, sorted by path, that merge OTHER into CURR,
+     *  whose split point is SPLIT
+     *  @param split Split point of the two branches
+     *  @param curr Head of the current branch
+     *  @param other Head of the branch merged in
+     */
+    static List<Action> plan(Commit split, Commit curr, Commit other) {
+        TreeSet<String> changed = new TreeSet<>();
+        Tree.diff(split.getTree(), other.getTree(), "", changed);
+        Tree.diff(split.getTree(), curr.getTree(), "", changed);
+        ArrayList<Action> result = new ArrayList<>();
+        for (String path : changed) {
+            String base = split.getBlob(path);
+            String ours = curr.getBlob(path);
+            String theirs = other.getBlob(path);
+            Kind kind;
+            if (Objects.equals(ours, theirs)) {
+                continue;
+            } else if (Objects.equals(base, theirs)) {
+                kind = Kind.TAKE_OURS;
+            } else if (Objects.equals(base, ours)) {
+                kind = theirs == null ? Kind.DELETE : Kind.TAKE_THEIRS;
+            } else {
+                kind = Kind.CONFLICT;
+            }
+            result.add(new Action(kind, path, base, ours, theirs));
+        }
+        return result;
+    }
+
+    /** What a merge does with one file. */
+    static final class Action {
+        /** Creates an action.
+         *  @param kind What is done
+         *  @param path Path of the file
+         *  @param base Blob id in the split point, or null
+         *  @param ours Blob id in the current head, or null
+         *  @param theirs Blob id in the other head, or null
+         */
+        Action(Kind kind, String path, String base, String ours,
+               String theirs) {
+            _kind = kind;
+            _path = path;
+            _base = base;
+            _ours = ours;
+            _theirs = theirs;
+        }
+
+        /** @return What is done */
+        Kind kind() {
+            return _kind;
+        }
+
+        /** @return Path of the file */
+        String path() {
+            return _path;
+        }
+
+        /** @return Blob id of the file in the split point, or null */
+        String base() {
+            return _base;
+        }
+
+        /** @return Blob id of the file in the current head, or null */
+        String ours() {
+            return _ours;
+        }
+
+        /** @return Blob id of the file in the other head, or null */
+        String theirs() {
+            return _theirs;
+        }
+
+        /** What is done. */
+        private final Kind _kind;
+
+        /** Path of the file. */
+        private final String _path;
+
+        /** Blob id in the split point, or null. */
+        private final String _base;
+
+        /** Blob id in the current head, or null. */
+        private final String _ours;
+
+        /** Blob id in the other head, or null. */
+        private final String _theirs;
+    }
+}
@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** Three-way merge of the lines of a file changed on both branches.
+ *
+ *  Each branch's version is compared with the split point's by Diff,
+ *  giving the regions of the split point's lines each branch changed.
+ *  Walking both lists of regions in order, regions from either branch
+ *  that overlap or touch are gathered into one group; lines outside
+ *  every group are the same in all three versions and are copied as
+ *  they are.  A group changed by one branch only takes that branch's
+ *  lines, as does one both branches changed the same way.  Only a group
+ *  both branches changed differently becomes a conflict, marked as
+ *  whole-file conflicts are, around just its own lines.  Memory used is
+ *  that of the three versions and Diff's arrays, in proportion to their
+ *  sizes.
+ *  @author Ishil Puri
+ */
+class MergeText {
+
+    /** Writes to OUT the merge of OURS and THEIRS, two versions of a file
+     *  whose common ancestor is BASE.
+     *  @param base Contents in the split point
+     *  @param ours Contents in the current head
+     *  @param theirs Contents in the other head
+     *  @param out Stream the result is written to
+     *  @return Whether the merge was free of conflicts
+     */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         OutputStream out) throws IOException {
+        Diff.Lines o = new Diff.Lines(base);
+        Diff.Lines a = new Diff.Lines(ours);
+        Diff.Lines b = new Diff.Lines(theirs);
+        List<Diff.Hunk> ha = Diff.diff(o, a), hb = Diff.diff(o, b);
+        boolean clean = true;
+        int i = 0, j = 0, pos = 0;
+        while (i < ha.size() || j < hb.size()) {
+            int lo = Math.min(i < ha.size() ? ha.get(i).aStart()
+                    : Integer.MAX_VALUE,
+                    j < hb.size() ? hb.get(j).aStart() : Integer.MAX_VALUE);
+            int hi = lo, i0 = i, j0 = j;
+            while (true) {
+                if (i < ha.size() && ha.get(i).aStart() <= hi) {
+                    hi = Math.max(hi, ha.get(i).aEnd());
+                    i += 1;
+                } else if (j < hb.size() && hb.get(j).aStart() <= hi) {
+                    hi = Math.max(hi, hb.get(j).aEnd());
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            o.write(out, pos, lo, null);
+            pos = hi;
+            if (j == j0) {
+                a.write(out, start(ha, i0, lo), end(ha, i - 1, hi), null);
+            } else if (i == i0) {
+                b.write(out, start(hb, j0, lo), end(hb, j - 1, hi), null);
+            } else {
+                int aFrom = start(ha, i0, lo), aTo = end(ha, i - 1, hi);
+                int bFrom = start(hb, j0, lo), bTo = end(hb, j - 1, hi);
+                if (a.sameLines(aFrom, aTo, b, bFrom, bTo)) {
+                    a.write(out, aFrom, aTo, null);
+                } else {
+                    out.write(OURS_MARK);
+                    writeSide(a, aFrom, aTo, out);
+                    out.write(SEPARATOR);
+                    writeSide(b, bFrom, bTo, out);
+                    out.write(END_MARK);
+                    clean = false;
+                }
+            }
+        }
+        o.write(out, pos, o.size(), null);
+        return clean;
+    }
+
+    /** @return The line of a branch's version matching line LO of the
+     *  split point, where the K-th of HUNKS is the first in LO's group
+     *  @param hunks Changes a branch made to the split point
+     *  @param k Index of the group's first hunk from HUNKS
+     *  @param lo First split point line of the group
+     */
+    private static int start(List<Diff.Hunk> hunks, int k, int lo) {
+        Diff.Hunk h = hunks.get(k);
+        return h.bStart() - (h.aStart() - lo);
+    }
+
+    /** @return The line of a branch's version matching line HI of the
+     *  split point, where the K-th of HUNKS is the last in HI's group
+     *  @param hunks Changes a branch made to the split point
+     *  @param k Index of the group's last hunk from HUNKS
+     *  @param hi Split point line just past the group
+     */
+    private static int end(List<Diff.Hunk> hunks, int k, int hi) {
+        Diff.Hunk h = hunks.get(k);
+        return h.bEnd() + (hi - h.aEnd());
+    }
+
+    /** Writes lines FROM to TO of V, one side of a conflict, to OUT,
+     *  ending them with a newline if the file's last line has none, so
+     *  that the marker after them starts a line of its own.
+     *  @param v A version of the file
+     *  @param from First line
+     *  @param to Line just past the last
+     *  @param out Stream written
+     */
+    private static void writeSide(Diff.Lines v, int from, int to,
+                                  OutputStream out) throws IOException {
+        v.write(out, from, to, null);
+        if (to > from && to == v.size() && v.unterminated()) {
+            out.write('\n');
+        }
+    }
+
+    /** Line starting the current branch's side of a conflict. */
+    private static final byte[] OURS_MARK =
+            "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Line between the two sides of a conflict. */
+    private static final byte[] SEPARATOR =
+            "=======\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Line ending a conflict. */
+    private static final byte[] END_MARK =
+            ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+}
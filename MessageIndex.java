@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/** Index from commit messages, and the words in them, to commit ids.
+ *
+ *  The messages of all commits are kept apart from the commits in a
+ *  single append-only file:
+ *      messages -- [magic:4][version:4] header followed by one
+ *                  [id:20][length:4][UTF-8 message] record per commit.
+ *  When read, it is turned into lookup tables by whole message and by
+ *  lower-cased word, while substring and regular-expression searches
+ *  scan the messages alone instead of deserializing commits.  A
+ *  repository that predates the file has it built from its commits on
+ *  first use.
+ *  @author Ishil Puri
+ */
+class MessageIndex {
+
+    /** Creates an index kept in FILE.  Nothing is read until the index
+     *  is first used.
+     *  @param file Path of the index file
+     */
+    MessageIndex(File file) {
+        _file = file;
+    }
+
+    /** Records that the new commit ID has MESSAGE.
+     *  @param id Sha1 id of the commit
+     *  @param message Its message
+     */
+    void add(String id, String message) {
+        if (!_file.isFile()) {
+            load();
+        }
+        if (_ids != null && _byMessage.getOrDefault(message, NO_RECORDS)
+                .stream().anyMatch(r -> _ids.get(r).equals(id))) {
+            return;
+        }
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer rec = ByteBuffer.allocate(RECORD_HEADER + text.length);
+        rec.put(Utils.uidToBytes(id)).putInt(text.length).put(text).flip();
+        try (FileChannel ch = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            if (ch.size() == 0) {
+                ch.write(ByteBuffer.allocate(HEADER).putInt(MAGIC)
+                        .putInt(VERSION).flip());
+            }
+            while (rec.hasRemaining()) {
+                ch.write(rec);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot update message index.");
+        }
+        if (_ids != null) {
+            insert(id, message);
+        }
+    }
+
+    /** Deletes the index file and forgets every message, so that the
+     *  index is rebuilt from the stored commits when next used. */
+    void reset() {
+        _file.delete();
+        reload();
+    }
+
+    /** Forgets what was read from the index file, so that commits added
+     *  by other processes are seen. */
+    void reload() {
+        _ids = null;
+    }
+
+    /** @return Sorted ids of the commits whose message is MESSAGE
+     *  @param message Commit message
+     */
+    List<String> exact(String message) {
+        load();
+        return idsOf(_byMessage.getOrDefault(message, NO_RECORDS));
+    }
+
+    /** @return Sorted ids of the commits whose message contains WORD,
+     *  ignoring case
+     *  @param word A single word
+     */
+    List<String> word(String word) {
+        load();
+        return idsOf(_byWord.getOrDefault(word.toLowerCase(Locale.ROOT),
+                NO_RECORDS));
+    }
+
+    /** @return Sorted ids of the commits whose message contains TEXT
+     *  @param text Text searched for
+     */
+    List<String> containing(String text) {
+        load();
+        ArrayList<Integer> found = new ArrayList<>();
+        for (int r = 0; r < _messages.size(); r += 1) {
+            if (_messages.get(r).contains(text)) {
+                found.add(r);
+            }
+        }
+        return idsOf(found);
+    }
+
+    /** @return Sorted ids of the commits part of whose message matches
+     *  PATTERN
+     *  @param pattern Compiled regular expression
+     */
+    List<String> matching(Pattern pattern) {
+        load();
+        ArrayList<Integer> found = new ArrayList<>();
+        for (int r = 0; r < _messages.size(); r += 1) {
+            if (pattern.matcher(_messages.get(r)).find()) {
+                found.add(r);
+            }
+        }
+        return idsOf(found);
+    }
+
+    /** @return Sorted, distinct ids of RECORDS
+     *  @param records Record numbers
+     */
+    private List<String> idsOf(List<Integer> records) {
+        TreeSet<String> result = new TreeSet<>();
+        for (int r : records) {
+            result.add(_ids.get(r));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Adds commit ID with MESSAGE to the lookup tables.
+     *  @param id Sha1 id of the commit
+     *  @param message Its message
+     */
+    private void insert(String id, String message) {
+        int r = _ids.size();
+        _ids.add(id);
+        _messages.add(message);
+        _byMessage.computeIfAbsent(message, k -> new ArrayList<>()).add(r);
+        TreeSet<String> words = new TreeSet<>();
+        for (String w : WORD_BREAK.split(message.toLowerCase(Locale.ROOT))) {
+            if (!w.isEmpty()) {
+                words.add(w);
+            }
+        }
+        for (String w : words) {
+            _byWord.computeIfAbsent(w, k -> new ArrayList<>()).add(r);
+        }
+    }
+
+    /** Reads the index file into the lookup tables, first building it
+     *  from the stored commits if there is none. */
+    private void load() {
+        if (_ids != null) {
+            return;
+        }
+        _ids = new ArrayList<>();
+        _messages = new ArrayList<>();
+        _byMessage = new HashMap<>();
+        _byWord = new HashMap<>();
+        if (!_file.isFile()) {
+            for (String id : Repository.OBJECTS.ids(ObjectStore.COMMIT)) {
+                add(id, Commit.read(id).getMessage());
+            }
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(_file));
+        if (in.remaining() < HEADER || in.getInt() != MAGIC
+                || in.getInt() != VERSION) {
+            throw Utils.error("Corrupt message index.");
+        }
+        byte[] raw = new byte[ID_BYTES];
+        while (in.remaining() >= RECORD_HEADER) {
+            in.get(raw);
+            int length = in.getInt();
+            if (length > in.remaining()) {
+                break;
+            }
+            String message = new String(in.array(), in.position(), length,
+                    StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            insert(Utils.bytesToUid(raw, 0), message);
+        }
+    }
+
+    /** Magic number at the start of the index file ("GMSG"). */
+    private static final int MAGIC = 0x474d5347;
+
+    /** Index file format version. */
+    private static final int VERSION = 1;
+
+    /** Bytes in the index file header. */
+    private static final int HEADER = 8;
+
+    /** Bytes in a raw sha1 id. */
+    private static final int ID_BYTES = 20;
+
+    /** Bytes preceding the message of each record. */
+    private static final int RECORD_HEADER = ID_BYTES + 4;
+
+    /** Separators between the words of a message. */
+    private static final Pattern WORD_BREAK =
+            Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /** Record list of messages that are not indexed. */
+    private static final List<Integer> NO_RECORDS = new ArrayList<>();
+
+    /** Path of the index file. */
+    private final File _file;
+
+    /** Commit ids, by record number, or null if not yet read. */
+    private ArrayList<String> _ids;
+
+    /** Commit messages, by record number. */
+    private ArrayList<String> _messages;
+
+    /** Record numbers, by whole message. */
+    private HashMap<String, List<Integer>> _byMessage;
+
+    /** Record numbers, by lower-cased word. */
+    private HashMap<String, List<Integer>> _byWord;
+}
@@ -0,0 +1,1032 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** Content-addressed storage for blobs and commits.
+ *
+ *  Every object is appended to a single pack file:
+ *      objects.pack -- [type:1][length:4][data:length] records
+ *  and located through a sorted index that is memory-mapped and
+ *  binary-searched on lookup:
+ *      objects.idx  -- [magic:4][version:4][count:4] header followed by
+ *                      count entries of [id:20][type:4][length:4][offset:8]
+ *                      sorted by id.
+ *  A blob may instead be stored as a delta against an earlier blob,
+ *  its record then holding [depth:4][base id:20][Delta instructions].
+ *  Chains are at most MAX_DEPTH long, and recently resolved blobs are
+ *  kept in a small cache so repeated reads do not replay them.
+ *  A file larger than CHUNKED_SIZE is stored instead as a manifest,
+ *  [size:8] followed by [chunk id:20][length:4] for each of the chunks
+ *  Chunker cuts it into, in order.  Each chunk is an object of its own,
+ *  named by the sha1 of CHUNK_MAGIC followed by its bytes, so a chunk
+ *  shared by several files or versions is stored once, and no chunk id
+ *  can be the id of a blob, commit or tree.  Such files are written and
+ *  read back one chunk at a time, whatever their size, and a manifest
+ *  whose chunks do not add up to its size is reported as corrupt.
+ *  Record contents are deflated unless that does not make them smaller;
+ *  a deflated record has DEFLATED set in its type and holds
+ *  [raw length:4][zlib stream].  Compression streams through reusable
+ *  buffers, so no second full-size copy of an object is made.
+ *  Objects may be read from several threads at once, but are written
+ *  from one.
+ *  Objects written during a command are held in a pending table until
+ *  flush merges them into a freshly written index.  Repositories created
+ *  before the pack existed keep their loose files under blobs/ and
+ *  commits/; those are still read when an id is not in the pack.
+ *  @author Ishil Puri
+ */
+class ObjectStore {
+
+    /** Type tag of file contents. */
+    static final int BLOB = 1;
+
+    /** Type tag of serialized commits. */
+    static final int COMMIT = 2;
+
+    /** Type tag of directory trees. */
+    static final int TREE = 4;
+
+    /** Type tag of blobs stored as a delta against another blob. */
+    private static final int BLOB_DELTA = 3;
+
+    /** Type tag of blobs stored as a manifest of chunks. */
+    private static final int BLOB_CHUNKED = 5;
+
+    /** Type tag of chunks of large blobs. */
+    private static final int CHUNK = 6;
+
+    /** Creates a store for the pack and index files inside DIR.
+     *  Nothing is opened until the store is first used.
+     *  @param dir The .gitlet directory
+     */
+    ObjectStore(File dir) {
+        _packFile = Utils.join(dir, "objects.pack");
+        _indexFile = Utils.join(dir, "objects.idx");
+    }
+
+    /** @return Whether an object with ID is stored
+     *  @param id Sha1 id of the object
+     */
+    boolean contains(String id) {
+        return locate(id) != null;
+    }
+
+    /** @return Contents of object ID of the given TYPE, or null if there
+     *  is no such object
+     *  @param id Sha1 id of the object
+     *  @param type Expected type tag
+     */
+    byte[] read(String id, int type) {
+        Entry e = locate(id);
+        if (e == null) {
+            File dir = looseDir(type);
+            File loose = dir == null ? null : Utils.join(dir, id);
+            return loose != null && loose.isFile()
+                    ? Utils.readContents(loose) : null;
+        } else if (e._type == BLOB_DELTA && type == BLOB) {
+            return counted(resolve(id, e));
+        } else if (e._type == BLOB_CHUNKED && type == BLOB) {
+            return assemble(id, e);
+        } else if (e._type != type) {
+            return null;
+        }
+        byte[] data = contents(id, e, -1);
+        return type == BLOB ? counted(data) : data;
+    }
+
+    /** @return Blob contents DATA, once they are counted as read
+     *  @param data Contents of a blob just read
+     */
+    private static byte[] counted(byte[] data) {
+        Trace.count(Trace.Counter.BLOB_BYTES_READ, data.length);
+        return data;
+    }
+
+    /** Sets the deflate LEVEL used for objects written from now on.
+     *  @param level 0 to store objects uncompressed, 1 (fastest) to 9
+     *  (smallest), or -1 for the zlib default
+     */
+    void setLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION
+                || level > Deflater.BEST_COMPRESSION) {
+            throw Utils.error("Compression level must be between -1 and 9.");
+        }
+        _level = level;
+    }
+
+    /** Appends DATA to the pack as object ID of the given TYPE, unless
+     *  that object is already stored.
+     *  @param id Sha1 id of the object
+     *  @param type Type tag
+     *  @param data Object contents
+     */
+    void write(String id, int type, byte[] data) {
+        if (contains(id)) {
+            return;
+        }
+        if (type == BLOB) {
+            Trace.count(Trace.Counter.BLOB_BYTES_WRITTEN, data.length);
+        }
+        append(id, type, data);
+    }
+
+    /** Stores blob ID with contents DATA, as a delta against blob BASE
+     *  when that is much smaller than DATA and would not make the delta
+     *  chain too deep.
+     *  @param id Sha1 id of the blob
+     *  @param data Blob contents
+     *  @param base Sha1 id of the prior version of the same file, or null
+     */
+    void writeBlob(String id, byte[] data, String base) {
+        if (contains(id)) {
+            return;
+        }
+        Trace.count(Trace.Counter.BLOB_BYTES_WRITTEN, data.length);
+        Entry b = base == null || data.length < MIN_DELTA_SIZE
+                ? null : locate(base);
+        if (b != null && b._type != BLOB_CHUNKED) {
+            int depth = b._type == BLOB_DELTA ? depthOf(base, b) + 1 : 1;
+            byte[] delta = depth > MAX_DEPTH ? null
+                    : Delta.encode(read(base, BLOB), data);
+            if (delta != null && delta.length < data.length / 2) {
+                ByteBuffer rec = ByteBuffer.allocate(DELTA_HEADER
+                        + delta.length);
+                rec.putInt(depth).put(Utils.uidToBytes(base)).put(delta);
+                append(id, BLOB_DELTA, rec.array());
+                remember(id, data);
+                return;
+            }
+        }
+        append(id, BLOB, data);
+    }
+
+    /** Stores blob ID with the contents of FILE, which are read one
+     *  chunk at a time if FILE is larger than CHUNKED_SIZE, and otherwise
+     *  stored as by writeBlob.
+     *  @param id Sha1 id of the blob
+     *  @param file File holding the blob contents
+     *  @param base Sha1 id of the prior version of the same file, or null
+     */
+    void writeFile(String id, File file, String base) {
+        if (contains(id)) {
+            return;
+        } else if (file.length() <= CHUNKED_SIZE) {
+            writeBlob(id, Utils.readContents(file), base);
+            return;
+        }
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        long size = 0;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            Chunker chunker = new Chunker(in);
+            manifest.write(new byte[SIZE_BYTES]);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                String chunkId = Utils.sha1(CHUNK_MAGIC, chunk);
+                if (!contains(chunkId)) {
+                    Trace.count(Trace.Counter.BLOB_BYTES_WRITTEN,
+                            chunk.length);
+                    append(chunkId, CHUNK, chunk);
+                }
+                manifest.write(Utils.uidToBytes(chunkId));
+                manifest.write(ByteBuffer.allocate(4).putInt(chunk.length)
+                        .array());
+                size += chunk.length;
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file.getPath());
+        }
+        Trace.count(Trace.Counter.FILE_BYTES_READ, size);
+        byte[] record = manifest.toByteArray();
+        ByteBuffer.wrap(record).putLong(size);
+        append(id, BLOB_CHUNKED, record);
+    }
+
+    /** Writes the contents of blob ID to OUT, one chunk at a time if it
+     *  is stored in chunks.
+     *  @return Number of bytes written, or -1 if there is no such blob
+     *  @param id Sha1 id of the blob
+     *  @param out Stream written
+     */
+    long readTo(String id, OutputStream out) throws IOException {
+        Entry e = locate(id);
+        if (e == null || e._type != BLOB_CHUNKED) {
+            byte[] data = read(id, BLOB);
+            if (data == null) {
+                return -1;
+            }
+            out.write(data);
+            return data.length;
+        }
+        ByteBuffer manifest = ByteBuffer.wrap(contents(id, e, -1));
+        long size = manifest.getLong(), at = 0;
+        byte[] raw = new byte[ID_BYTES];
+        while (manifest.hasRemaining()) {
+            manifest.get(raw);
+            int length = manifest.getInt();
+            byte[] chunk = chunk(Utils.bytesToUid(raw, 0));
+            if (chunk.length != length || at + length > size) {
+                throw Utils.error("Corrupt object %s.", id);
+            }
+            out.write(counted(chunk));
+            at += length;
+        }
+        if (at != size) {
+            throw Utils.error("Corrupt object %s.", id);
+        }
+        return size;
+    }
+
+    /** @return Contents of blob ID, stored at E as a manifest of chunks,
+     *  gathered into one array
+     *  @param id Sha1 id of the blob
+     *  @param e Location of the blob
+     */
+    private byte[] assemble(String id, Entry e) {
+        ByteBuffer manifest = ByteBuffer.wrap(contents(id, e, -1));
+        long size = manifest.getLong();
+        if (size > MAX_ARRAY) {
+            throw Utils.error("Blob %s is too large to read into memory.",
+                    id);
+        }
+        byte[] result = new byte[(int) size];
+        byte[] raw = new byte[ID_BYTES];
+        int at = 0;
+        while (manifest.hasRemaining()) {
+            manifest.get(raw);
+            int length = manifest.getInt();
+            byte[] chunk = chunk(Utils.bytesToUid(raw, 0));
+            if (chunk.length != length || at + length > result.length) {
+                throw Utils.error("Corrupt object %s.", id);
+            }
+            System.arraycopy(chunk, 0, result, at, length);
+            at += length;
+        }
+        if (at != result.length) {
+            throw Utils.error("Corrupt object %s.", id);
+        }
+        return counted(result);
+    }
+
+    /** @return Contents of chunk ID
+     *  @param id Sha1 id of the chunk
+     */
+    private byte[] chunk(String id) {
+        Entry e = locate(id);
+        if (e == null || e._type != CHUNK) {
+            throw Utils.error("Missing chunk %s.", id);
+        }
+        return contents(id, e, -1);
+    }
+
+    /** @return The pack record of an object of the given TYPE with
+     *  contents DATA, header included, deflated when that makes it
+     *  smaller.  Unlike write, this may be called from many threads at
+     *  once, so that objects can be compressed in parallel and then
+     *  appended in order with writeRecord.  Each thread deflates into a
+     *  scratch array it keeps, so only the compressed record is copied
+     *  out.
+     *  @param type Type tag
+     *  @param data Object contents
+     */
+    byte[] encode(int type, byte[] data) {
+        int limit = RECORD_HEADER + data.length;
+        if (_level != 0 && data.length > RAW_LENGTH_BYTES) {
+            Deflater deflater = _deflaters.get();
+            deflater.reset();
+            deflater.setLevel(_level);
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] rec = _scratch.get();
+            if (rec.length < limit) {
+                rec = new byte[limit];
+                if (limit <= SCRATCH_BYTES) {
+                    _scratch.set(rec);
+                }
+            }
+            int end = RECORD_HEADER + RAW_LENGTH_BYTES;
+            while (!deflater.finished() && end < limit) {
+                end += deflater.deflate(rec, end, limit - end);
+            }
+            if (deflater.finished() && end < limit) {
+                ByteBuffer.wrap(rec).put((byte) (type | DEFLATED))
+                        .putInt(end - RECORD_HEADER).putInt(data.length);
+                return Arrays.copyOf(rec, end);
+            }
+        }
+        return ByteBuffer.allocate(limit).put((byte) type)
+                .putInt(data.length).put(data).array();
+    }
+
+    /** Appends RECORD, made by encode, to the pack as object ID, unless
+     *  that object is already stored.
+     *  @param id Sha1 id of the object
+     *  @param record Pack record, header included
+     */
+    void writeRecord(String id, byte[] record) {
+        if (contains(id)) {
+            return;
+        }
+        if ((record[0] & ~DEFLATED) == BLOB) {
+            Trace.count(Trace.Counter.BLOB_BYTES_WRITTEN,
+                    (record[0] & DEFLATED) != 0
+                    ? ByteBuffer.wrap(record).getInt(RECORD_HEADER)
+                    : record.length - RECORD_HEADER);
+        }
+        try {
+            FileChannel ch = pack();
+            long offset = ch.size();
+            writeFully(ch, ByteBuffer.wrap(record), offset);
+            _pending.put(id, new Entry(record[0] & 0xff,
+                    record.length - RECORD_HEADER, offset));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write object %s.", id);
+        }
+    }
+
+    /** Appends record DATA of the given TYPE to the pack as object ID,
+     *  deflated when that makes it smaller.
+     *  @param id Sha1 id of the object
+     *  @param type Type tag
+     *  @param data Record contents
+     */
+    private void append(String id, int type, byte[] data) {
+        try {
+            FileChannel ch = pack();
+            long offset = ch.size();
+            if (_level != 0 && data.length > RAW_LENGTH_BYTES) {
+                int length = deflateTo(ch, offset, data);
+                if (length >= 0) {
+                    writeFully(ch, ByteBuffer.allocate(RECORD_HEADER)
+                            .put((byte) (type | DEFLATED)).putInt(length)
+                            .flip(), offset);
+                    _pending.put(id, new Entry(type | DEFLATED, length,
+                            offset));
+                    return;
+                }
+                ch.truncate(offset);
+            }
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            header.put((byte) type).putInt(data.length).flip();
+            writeFully(ch, header, offset);
+            writeFully(ch, ByteBuffer.wrap(data), offset + RECORD_HEADER);
+            _pending.put(id, new Entry(type, data.length, offset));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write object %s.", id);
+        }
+    }
+
+    /** Streams DATA, deflated and preceded by its raw length, into CH
+     *  after the record header at OFFSET.
+     *  @return Length of the record contents written, or -1 if they
+     *  would not be smaller than DATA, in which case writing stops early
+     *  @param ch Pack channel
+     *  @param offset Offset of the record being written
+     *  @param data Record contents
+     */
+    private int deflateTo(FileChannel ch, long offset, byte[] data)
+        throws IOException {
+        Deflater deflater = deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteBuffer out = buffer();
+        out.putInt(data.length);
+        long pos = offset + RECORD_HEADER;
+        int length = 0;
+        while (!deflater.finished()) {
+            deflater.deflate(out);
+            if (!out.hasRemaining() || deflater.finished()) {
+                out.flip();
+                length += out.remaining();
+                if (length >= data.length) {
+                    return -1;
+                }
+                pos = writeFully(ch, out, pos);
+                out.clear();
+            }
+        }
+        return length;
+    }
+
+    /** Writes all of BUF to CH at POS.
+     *  @return Position just past the bytes written
+     *  @param ch Channel to write to
+     *  @param buf Bytes to write
+     *  @param pos Position in CH
+     */
+    private static long writeFully(FileChannel ch, ByteBuffer buf, long pos)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+        return pos;
+    }
+
+    /** @return Sorted ids of every stored object of the given TYPE
+     *  @param type Type tag
+     */
+    List<String> ids(int type) {
+        return ids("", type);
+    }
+
+    /** @return Sorted ids of the stored objects of the given TYPE whose
+     *  ids start with PREFIX, found by binary search in the index
+     *  @param prefix Leading hexadecimal digits of the ids, in either
+     *  case
+     *  @param type Type tag
+     */
+    List<String> ids(String prefix, int type) {
+        prefix = prefix.toLowerCase();
+        TreeMap<String, Boolean> result = new TreeMap<>();
+        StringBuilder padded = new StringBuilder(prefix);
+        while (padded.length() < Utils.UID_LENGTH) {
+            padded.append('0');
+        }
+        byte[] key = Utils.uidToBytes(padded.toString());
+        if (key == null) {
+            return new ArrayList<>();
+        }
+        ByteBuffer idx = index();
+        byte[] raw = new byte[ID_BYTES];
+        for (int i = lowerBound(idx, key); i < _count; i += 1) {
+            int at = HEADER + i * ENTRY;
+            idx.get(at, raw);
+            String id = Utils.bytesToUid(raw, 0);
+            if (!id.startsWith(prefix)) {
+                break;
+            } else if (isType(idx.getInt(at + ID_BYTES) & ~DEFLATED, type)) {
+                result.put(id, true);
+            }
+        }
+        for (Map.Entry<String, Entry> e
+                 : _pending.tailMap(prefix, true).entrySet()) {
+            if (!e.getKey().startsWith(prefix)) {
+                break;
+            } else if (isType(e.getValue()._type, type)) {
+                result.put(e.getKey(), true);
+            }
+        }
+        File dir = looseDir(type);
+        List<String> loose = dir == null ? null : Utils.plainFilenamesIn(dir);
+        if (loose != null) {
+            for (String id : loose) {
+                if (id.startsWith(prefix)) {
+                    result.put(id, true);
+                }
+            }
+        }
+        return new ArrayList<>(result.keySet());
+    }
+
+    /** @return Whether objects stored with type tag STORED are read as
+     *  objects of the given TYPE
+     *  @param stored Type tag in the pack, without DEFLATED
+     *  @param type Type tag asked for
+     */
+    private static boolean isType(int stored, int type) {
+        return stored == type
+                || (stored == BLOB_DELTA || stored == BLOB_CHUNKED)
+                && type == BLOB;
+    }
+
+    /** Makes every object written since the last flush durable and
+     *  visible through the index. */
+    void flush() {
+        if (_pending.isEmpty()) {
+            return;
+        }
+        try {
+            pack().force(false);
+            ByteBuffer old = index();
+            int total = _count + _pending.size();
+            ByteBuffer out = ByteBuffer.allocate(HEADER + total * ENTRY);
+            out.putInt(MAGIC).putInt(VERSION).putInt(total);
+            int i = 0;
+            for (Map.Entry<String, Entry> e : _pending.entrySet()) {
+                byte[] id = Utils.uidToBytes(e.getKey());
+                for (; i < _count && compare(old, i, id) < 0; i += 1) {
+                    out.put(old.slice(HEADER + i * ENTRY, ENTRY));
+                }
+                Entry v = e.getValue();
+                out.put(id).putInt(v.tag()).putInt(v._length)
+                        .putLong(v._offset);
+            }
+            for (; i < _count; i += 1) {
+                out.put(old.slice(HEADER + i * ENTRY, ENTRY));
+            }
+            writeIndex(out.flip());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot update object index.");
+        }
+        _pending.clear();
+    }
+
+    /** Drops the index and pack channel, so that objects written by
+     *  other processes are found.  Objects written since the last flush
+     *  are forgotten.  Cached contents are kept, since an object's
+     *  contents never change. */
+    synchronized void reload() {
+        _pending.clear();
+        _index = null;
+        if (_pack != null) {
+            try {
+                _pack.close();
+            } catch (IOException excp) {
+                /* Ignore; the channel is reopened on next use. */
+            }
+            _pack = null;
+        }
+    }
+
+    /** Removes objects IDS from the index, so that they are no longer
+     *  found or listed.  Their records are left in the pack unused.
+     *  @param ids Sha1 ids of the objects
+     */
+    void forget(Set<String> ids) {
+        flush();
+        ByteBuffer old = index();
+        ByteBuffer out = ByteBuffer.allocate(HEADER + _count * ENTRY);
+        out.putInt(MAGIC).putInt(VERSION).putInt(0);
+        byte[] raw = new byte[ID_BYTES];
+        int kept = 0;
+        for (int i = 0; i < _count; i += 1) {
+            old.get(HEADER + i * ENTRY, raw);
+            if (!ids.contains(Utils.bytesToUid(raw, 0))) {
+                out.put(old.slice(HEADER + i * ENTRY, ENTRY));
+                kept += 1;
+            }
+        }
+        out.putInt(8, kept);
+        try {
+            writeIndex(out.flip());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot update object index.");
+        }
+    }
+
+    /** Replaces the index file with the contents of OUT, and unmaps the
+     *  old index.
+     *  @param out Complete index contents
+     */
+    private void writeIndex(ByteBuffer out) throws IOException {
+        File tmp = new File(_indexFile.getPath() + ".lock");
+        try (FileChannel ch = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                ch.write(out);
+            }
+            ch.force(false);
+        }
+        Files.move(tmp.toPath(), _indexFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        _index = null;
+    }
+
+    /** @return Contents of blob ID, stored at E as a delta, rebuilt from
+     *  the nearest cached or full base in its chain
+     *  @param id Sha1 id of the blob
+     *  @param e Location of the blob
+     */
+    private byte[] resolve(String id, Entry e) {
+        byte[] cached = cached(id);
+        if (cached != null) {
+            return cached;
+        }
+        ArrayDeque<String> chain = new ArrayDeque<>();
+        ArrayDeque<byte[]> deltas = new ArrayDeque<>();
+        byte[] data = null;
+        String at = id;
+        while (data == null) {
+            byte[] rec = contents(at, e, -1);
+            chain.push(at);
+            deltas.push(Arrays.copyOfRange(rec, DELTA_HEADER, rec.length));
+            at = Utils.bytesToUid(rec, DEPTH_BYTES);
+            data = cached(at);
+            if (data == null) {
+                e = locate(at);
+                if (e == null) {
+                    throw Utils.error("Missing delta base %s.", at);
+                } else if (e._type != BLOB_DELTA) {
+                    data = contents(at, e, -1);
+                }
+            }
+        }
+        while (!chain.isEmpty()) {
+            data = Delta.apply(data, deltas.pop());
+            remember(chain.pop(), data);
+        }
+        return data;
+    }
+
+    /** @return Depth of the delta chain of blob ID stored at E
+     *  @param id Sha1 id of the blob
+     *  @param e Location of the blob
+     */
+    private int depthOf(String id, Entry e) {
+        return ByteBuffer.wrap(contents(id, e, DEPTH_BYTES)).getInt();
+    }
+
+    /** Caches DATA as the contents of blob ID, evicting the least recently
+     *  used blobs once the cache holds more than CACHE_BYTES.
+     *  @param id Sha1 id of the blob
+     *  @param data Blob contents
+     */
+    private void remember(String id, byte[] data) {
+        if (data.length > CACHE_BYTES) {
+            return;
+        }
+        synchronized (_resolved) {
+            if (_resolved.put(id, data) == null) {
+                _cachedBytes += data.length;
+            }
+            Iterator<byte[]> it = _resolved.values().iterator();
+            while (_cachedBytes > CACHE_BYTES && it.hasNext()) {
+                _cachedBytes -= it.next().length;
+                it.remove();
+            }
+        }
+    }
+
+    /** @return Cached contents of blob ID, or null
+     *  @param id Sha1 id of the blob
+     */
+    private byte[] cached(String id) {
+        synchronized (_resolved) {
+            return _resolved.get(id);
+        }
+    }
+
+    /** @return The first LENGTH bytes of the uncompressed contents of
+     *  object ID stored at E, or all of them if LENGTH is negative
+     *  @param id Sha1 id of the object
+     *  @param e Location of the object
+     *  @param length Number of bytes wanted
+     */
+    private byte[] contents(String id, Entry e, int length) {
+        if (!e._deflated) {
+            return readRecord(id, e, ByteBuffer.allocate(
+                    length < 0 ? e._length : length)).array();
+        }
+        ByteBuffer in = buffer();
+        in.limit(Math.min(in.capacity(), e._length));
+        readRecord(id, e, in).flip();
+        int raw = in.getInt();
+        byte[] result = new byte[length < 0 ? raw : Math.min(length, raw)];
+        Inflater inflater = inflater();
+        inflater.setInput(in);
+        try {
+            int done = 0, read = in.limit();
+            while (done < result.length) {
+                if (inflater.needsInput()) {
+                    if (read >= e._length) {
+                        throw Utils.error("Corrupt object %s.", id);
+                    }
+                    in.clear();
+                    in.limit(Math.min(in.capacity(), e._length - read));
+                    readRecord(id, e, in, read).flip();
+                    read += in.limit();
+                    inflater.setInput(in);
+                }
+                done += inflater.inflate(result, done, result.length - done);
+            }
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt object %s.", id);
+        }
+        return result;
+    }
+
+    /** Fills BUF from the start of the record contents of object ID
+     *  stored at E.
+     *  @return BUF
+     *  @param id Sha1 id of the object
+     *  @param e Location of the object
+     *  @param buf Buffer to fill
+     */
+    private ByteBuffer readRecord(String id, Entry e, ByteBuffer buf) {
+        return readRecord(id, e, buf, 0);
+    }
+
+    /** Fills BUF from the record contents of object ID stored at E,
+     *  starting FROM bytes into them.
+     *  @return BUF
+     *  @param id Sha1 id of the object
+     *  @param e Location of the object
+     *  @param buf Buffer to fill
+     *  @param from Offset into the record contents
+     */
+    private ByteBuffer readRecord(String id, Entry e, ByteBuffer buf,
+                                  int from) {
+        try {
+            long pos = e._offset + RECORD_HEADER + from;
+            while (buf.hasRemaining()) {
+                if (pack().read(buf, pos + buf.position()) < 0) {
+                    throw Utils.error("Truncated object %s.", id);
+                }
+            }
+            return buf;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s.", id);
+        }
+    }
+
+    /** @return The shared deflater, reset for a new object */
+    private Deflater deflater() {
+        if (_deflater == null) {
+            _deflater = new Deflater(_level);
+        }
+        _deflater.reset();
+        _deflater.setLevel(_level);
+        return _deflater;
+    }
+
+    /** @return This thread's inflater, reset for a new object */
+    private Inflater inflater() {
+        Inflater inflater = _inflater.get();
+        inflater.reset();
+        return inflater;
+    }
+
+    /** @return This thread's staging buffer, cleared */
+    private ByteBuffer buffer() {
+        ByteBuffer buf = _buffer.get();
+        buf.clear();
+        return buf;
+    }
+
+    /** @return Location of object ID, or null if it is not in the pack
+     *  @param id Sha1 id of the object
+     */
+    private Entry locate(String id) {
+        Entry e = _pending.get(id);
+        if (e != null) {
+            return e;
+        }
+        byte[] key = Utils.uidToBytes(id);
+        if (key == null) {
+            return null;
+        }
+        ByteBuffer idx = index();
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(idx, mid, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                int at = HEADER + mid * ENTRY + ID_BYTES;
+                return new Entry(idx.getInt(at), idx.getInt(at + 4),
+                        idx.getLong(at + 8));
+            }
+        }
+        return null;
+    }
+
+    /** @return Number of index entries whose ids sort before KEY
+     *  @param idx Mapped index
+     *  @param key Raw sha1 bytes
+     */
+    private int lowerBound(ByteBuffer idx, byte[] key) {
+        int lo = 0, hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(idx, mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** @return Unsigned comparison of the id of index entry I with KEY
+     *  @param idx Mapped index
+     *  @param i Entry number
+     *  @param key Raw sha1 bytes
+     */
+    private static int compare(ByteBuffer idx, int i, byte[] key) {
+        int at = HEADER + i * ENTRY;
+        for (int k = 0; k < ID_BYTES; k += 1) {
+            int c = Integer.compare(idx.get(at + k) & 0xff, key[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** @return The index, mapped read-only, or an empty buffer if the
+     *  repository has no index yet */
+    private synchronized ByteBuffer index() {
+        if (_index == null) {
+            if (!_indexFile.isFile()) {
+                _index = ByteBuffer.allocate(0);
+                _count = 0;
+                return _index;
+            }
+            try (FileChannel ch = FileChannel.open(_indexFile.toPath(),
+                    StandardOpenOption.READ)) {
+                MappedByteBuffer map =
+                        ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                    throw Utils.error("Corrupt object index.");
+                }
+                _count = map.getInt(8);
+                _index = map;
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read object index.");
+            }
+        }
+        return _index;
+    }
+
+    /** @return Channel on the pack file, opened on first use */
+    private synchronized FileChannel pack() throws IOException {
+        if (_pack == null) {
+            _pack = FileChannel.open(_packFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+        return _pack;
+    }
+
+    /** @return Directory of loose objects of the given TYPE written by
+     *  repositories that predate the pack, or null if there never were
+     *  loose objects of that type
+     *  @param type Type tag
+     */
+    private static File looseDir(int type) {
+        switch (type) {
+        case BLOB:
+            return Repository.BLOBS;
+        case COMMIT:
+            return Repository.COMMITSFOLDER;
+        default:
+            return null;
+        }
+    }
+
+    /** Location of one object in the pack. */
+    private static final class Entry {
+        /** Creates an entry.
+         * @param tag Type tag, with DEFLATED set if the record is deflated
+         * @param length Length of the record contents
+         * @param offset Offset of the object record in the pack
+         */
+        Entry(int tag, int length, long offset) {
+            _type = tag & ~DEFLATED;
+            _deflated = (tag & DEFLATED) != 0;
+            _length = length;
+            _offset = offset;
+        }
+
+        /** @return Type tag as stored in the pack and index */
+        int tag() {
+            return _deflated ? _type | DEFLATED : _type;
+        }
+
+        /** Type tag. */
+        private final int _type;
+
+        /** Whether the record contents are deflated. */
+        private final boolean _deflated;
+
+        /** Length of the record contents. */
+        private final int _length;
+
+        /** Offset of the object record in the pack. */
+        private final long _offset;
+    }
+
+    /** Magic number at the start of the index ("GIDX"). */
+    private static final int MAGIC = 0x47494458;
+
+    /** Index format version. */
+    private static final int VERSION = 1;
+
+    /** Bytes in the index header. */
+    private static final int HEADER = 12;
+
+    /** Bytes in a raw sha1 id. */
+    private static final int ID_BYTES = 20;
+
+    /** Bytes in one index entry. */
+    private static final int ENTRY = ID_BYTES + 16;
+
+    /** Bytes preceding the contents of each pack record. */
+    private static final int RECORD_HEADER = 5;
+
+    /** Flag set in the type of records whose contents are deflated. */
+    private static final int DEFLATED = 0x80;
+
+    /** Bytes of the raw length preceding a deflated stream. */
+    private static final int RAW_LENGTH_BYTES = 4;
+
+    /** Size of the buffer that deflated streams pass through. */
+    private static final int BUFFER_BYTES = 64 << 10;
+
+    /** Largest scratch array a thread keeps for encoding records.  Pool
+     *  threads keep theirs for as long as the process runs, so this is
+     *  small; larger records are encoded in an array of their own. */
+    private static final int SCRATCH_BYTES = 256 << 10;
+
+    /** Bytes of the chain depth in a delta record. */
+    private static final int DEPTH_BYTES = 4;
+
+    /** Bytes preceding the instructions of a delta record. */
+    private static final int DELTA_HEADER = DEPTH_BYTES + ID_BYTES;
+
+    /** Longest delta chain a blob may be stored at the end of. */
+    private static final int MAX_DEPTH = 16;
+
+    /** Files larger than this are stored in chunks. */
+    static final int CHUNKED_SIZE = 1 << 20;
+
+    /** Largest blob that can be read into one array. */
+    private static final long MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    /** Bytes hashed before the contents of a chunk to give its id,
+     *  setting chunk ids apart from those of other objects. */
+    private static final byte[] CHUNK_MAGIC = {'G', 'C', 'H', 'K'};
+
+    /** Bytes of the size at the start of a chunk manifest. */
+    private static final int SIZE_BYTES = 8;
+
+    /** Blobs smaller than this are always stored whole. */
+    private static final int MIN_DELTA_SIZE = 64;
+
+    /** Total size of resolved blobs kept in the cache. */
+    private static final int CACHE_BYTES = 32 << 20;
+
+    /** Path of the pack file. */
+    private final File _packFile;
+
+    /** Path of the index file. */
+    private final File _indexFile;
+
+    /** Open pack channel, or null. */
+    private FileChannel _pack;
+
+    /** Mapped index, or null if not yet mapped. */
+    private ByteBuffer _index;
+
+    /** Number of entries in the mapped index. */
+    private int _count;
+
+    /** Objects appended since the last flush, by id. */
+    private final TreeMap<String, Entry> _pending = new TreeMap<>();
+
+    /** Recently resolved blob contents, by id, least recent first. */
+    private final LinkedHashMap<String, byte[]> _resolved =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of the blobs in _resolved. */
+    private long _cachedBytes;
+
+    /** Deflate level for new objects. */
+    private int _level = Deflater.DEFAULT_COMPRESSION;
+
+    /** Reused deflater, or null. */
+    private Deflater _deflater;
+
+    /** Deflater of each thread encoding records. */
+    private final ThreadLocal<Deflater> _deflaters =
+            ThreadLocal.withInitial(Deflater::new);
+
+    /** Scratch array each thread encodes records in. */
+    private final ThreadLocal<byte[]> _scratch =
+            ThreadLocal.withInitial(() -> new byte[0]);
+
+    /** Reused inflater of each thread. */
+    private final ThreadLocal<Inflater> _inflater =
+            ThreadLocal.withInitial(Inflater::new);
+
+    /** Reused staging buffer for deflated streams of each thread. */
+    private final ThreadLocal<ByteBuffer> _buffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(
+                    BUFFER_BYTES));
+}
@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the pack objects are stored in.
+ *  @author Ishil Puri
+ */
+public class ObjectStoreTest {
+
+    /** Starts each test with an empty store. */
+    @Before
+    public void setUp() throws IOException {
+        TestRepo.create();
+        _dir = Utils.join(Repository.CWD, "store");
+        _dir.mkdir();
+        _store = new ObjectStore(_dir);
+    }
+
+    /** Objects read back as written, by type, before and after a flush
+     *  and from a store that opens the pack afresh. */
+    @Test
+    public void writeAndRead() {
+        byte[] text = repeat("some text\n", 100);
+        byte[] tiny = {1, 2};
+        String a = Utils.sha1Bytes(text), b = Utils.sha1Bytes(tiny);
+        String c = Utils.sha1("commit");
+        _store.write(a, ObjectStore.BLOB, text);
+        _store.write(b, ObjectStore.BLOB, tiny);
+        _store.write(c, ObjectStore.COMMIT, tiny);
+        for (ObjectStore s : new ObjectStore[] {_store, null}) {
+            if (s == null) {
+                _store.flush();
+                s = new ObjectStore(_dir);
+            }
+            assertTrue(s.contains(a));
+            assertArrayEquals(text, s.read(a, ObjectStore.BLOB));
+            assertArrayEquals(tiny, s.read(b, ObjectStore.BLOB));
+            assertArrayEquals(tiny, s.read(c, ObjectStore.COMMIT));
+            assertNull(s.read(c, ObjectStore.BLOB));
+            assertNull(s.read(Utils.sha1("none"), ObjectStore.BLOB));
+            assertFalse(s.contains(Utils.sha1("none")));
+        }
+    }
+
+    /** Objects are read back whatever the compression level. */
+    @Test
+    public void levels() {
+        byte[] text = repeat("level\n", 1000);
+        for (int level = -1; level <= 9; level += 1) {
+            _store.setLevel(level);
+            String id = Utils.sha1(text, Integer.toString(level));
+            _store.write(id, ObjectStore.BLOB, text);
+            assertArrayEquals(text, _store.read(id, ObjectStore.BLOB));
+        }
+        _store.flush();
+        ObjectStore s = new ObjectStore(_dir);
+        for (int level = -1; level <= 9; level += 1) {
+            String id = Utils.sha1(text, Integer.toString(level));
+            assertArrayEquals(text, s.read(id, ObjectStore.BLOB));
+        }
+    }
+
+    /** Versions of a blob stored as deltas read back whole, and take
+     *  less space than whole copies. */
+    @Test
+    public void deltas() throws IOException {
+        _store.setLevel(0);
+        Random random = new Random(SEED);
+        byte[] data = new byte[BLOB_SIZE];
+        random.nextBytes(data);
+        List<byte[]> versions = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        String base = null;
+        for (int v = 0; v < VERSIONS; v += 1) {
+            data = data.clone();
+            data[random.nextInt(data.length)] += 1;
+            String id = Utils.sha1Bytes(data);
+            _store.writeBlob(id, data, base);
+            versions.add(data);
+            ids.add(id);
+            base = id;
+        }
+        _store.flush();
+        assertTrue(new File(_dir, "objects.pack").length()
+                < (long) BLOB_SIZE * VERSIONS / 2);
+        ObjectStore s = new ObjectStore(_dir);
+        for (int v = VERSIONS - 1; v >= 0; v -= 1) {
+            assertArrayEquals(versions.get(v),
+                    s.read(ids.get(v), ObjectStore.BLOB));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(BLOB_SIZE, s.readTo(ids.get(v), out));
+            assertArrayEquals(versions.get(v), out.toByteArray());
+        }
+    }
+
+    /** Files larger than CHUNKED_SIZE are stored in chunks, read back
+     *  whole or streamed, and an edited copy shares most of its chunks. */
+    @Test
+    public void chunks() throws IOException {
+        _store.setLevel(0);
+        Random random = new Random(SEED);
+        byte[] data = new byte[3 * ObjectStore.CHUNKED_SIZE];
+        random.nextBytes(data);
+        File file = Utils.join(Repository.CWD, "large");
+        Utils.writeContents(file, data);
+        String id = Utils.sha1Contents(file);
+        _store.writeFile(id, file, null);
+        _store.flush();
+        long packed = new File(_dir, "objects.pack").length();
+        data[data.length / 2] += 1;
+        Utils.writeContents(file, data);
+        String edited = Utils.sha1Contents(file);
+        _store.writeFile(edited, file, id);
+        _store.flush();
+        long grown = new File(_dir, "objects.pack").length() - packed;
+        assertTrue(grown < data.length / 4);
+        ObjectStore s = new ObjectStore(_dir);
+        assertArrayEquals(data, s.read(edited, ObjectStore.BLOB));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, s.readTo(edited, out));
+        assertArrayEquals(data, out.toByteArray());
+        data[data.length / 2] -= 1;
+        assertArrayEquals(data, s.read(id, ObjectStore.BLOB));
+        List<String> both = new ArrayList<>(Arrays.asList(id, edited));
+        Collections.sort(both);
+        assertEquals(both, s.ids(ObjectStore.BLOB));
+    }
+
+    /** Ids are listed by type and prefix, in either case, whether pending
+     *  or flushed. */
+    @Test
+    public void ids() {
+        List<String> blobs = new ArrayList<>();
+        for (int i = 0; i < IDS; i += 1) {
+            String id = Utils.sha1("blob" + i);
+            _store.write(id, ObjectStore.BLOB, new byte[] {(byte) i});
+            blobs.add(id);
+            _store.write(Utils.sha1("commit" + i), ObjectStore.COMMIT,
+                    new byte[] {(byte) i});
+            if (i == IDS / 2) {
+                _store.flush();
+            }
+        }
+        Collections.sort(blobs);
+        assertEquals(blobs, _store.ids(ObjectStore.BLOB));
+        assertEquals(IDS, _store.ids(ObjectStore.COMMIT).size());
+        for (String id : blobs) {
+            for (int n = 1; n <= Utils.UID_LENGTH; n += 1) {
+                String prefix = id.substring(0, n);
+                List<String> expected = new ArrayList<>();
+                for (String other : blobs) {
+                    if (other.startsWith(prefix)) {
+                        expected.add(other);
+                    }
+                }
+                assertEquals(expected, _store.ids(prefix, ObjectStore.BLOB));
+                assertEquals(expected, _store.ids(prefix.toUpperCase(),
+                        ObjectStore.BLOB));
+            }
+        }
+        assertTrue(_store.ids("zz", ObjectStore.BLOB).isEmpty());
+    }
+
+    /** @return S repeated N times, as UTF-8
+     *  @param s Text repeated
+     *  @param n Number of copies
+     */
+    private static byte[] repeat(String s, int n) {
+        return s.repeat(n).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Seed of the random contents. */
+    private static final long SEED = 25;
+
+    /** Bytes in each version of a blob stored as deltas. */
+    private static final int BLOB_SIZE = 10000;
+
+    /** Number of versions of a blob stored as deltas. */
+    private static final int VERSIONS = 20;
+
+    /** Number of blobs and of commits listed. */
+    private static final int IDS = 200;
+
+    /** The .gitlet directory of the store tested. */
+    private File _dir;
+
+    /** Store tested. */
+    private ObjectStore _store;
+}
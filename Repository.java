@@ -1,14 +1,26 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.HashSet;
-import java.util.Deque;
-import java.util.ArrayDeque;
-import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /** Class that implements gitlet commands.
  * @author Ishil Puri
@@ -27,20 +39,132 @@ public class Repository implements Serializable {
         _currentBranch = "master";
     }
 
+    /** Applies the settings of this repository before a command runs. */
+    public void open() {
+        if (_compressionLevel != null) {
+            OBJECTS.setLevel(_compressionLevel);
+        }
+    }
+
+    /** Changes a repository setting.
+     * compression -- deflate level of new objects, 0 to 9 or -1
+     * @param key Name of the setting
+     * @param value New value
+     */
+    public void config(String key, String value) {
+        if (!key.equals("compression")) {
+            throw Utils.error("No setting with that name exists.");
+        }
+        try {
+            OBJECTS.setLevel(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw Utils.error("Compression level must be between -1 and 9.");
+        }
+        _compressionLevel = Integer.parseInt(value);
+    }
+
+    /** Rewrites a repository written by an earlier build in the current
+     * format: every commit still stored as a serialized Java object is
+     * re-encoded, which changes its id, and every commit with a parent
+     * so renamed is saved again with the new parent id, which changes
+     * its id in turn.  Loose blobs are moved into the pack.  The old ids
+     * are forgotten unless a branch or a remaining commit still refers
+     * to one.
+     */
+    public void migrate() throws IOException {
+        List<String> blobs = Utils.plainFilenamesIn(BLOBS);
+        if (blobs != null) {
+            for (String blobID : blobs) {
+                OBJECTS.write(blobID, ObjectStore.BLOB,
+                        Utils.readContents(Utils.join(BLOBS, blobID)));
+            }
+        }
+        TreeMap<Integer, String> byPosition = new TreeMap<>();
+        for (String cID : OBJECTS.ids(ObjectStore.COMMIT)) {
+            byPosition.put(GRAPH.position(cID), cID);
+        }
+        HashMap<String, String> renamed = new HashMap<>();
+        ArrayList<Commit> kept = new ArrayList<>();
+        for (String cID : byPosition.values()) {
+            Commit c = commitFromFile(cID);
+            boolean stale = false;
+            for (String p : c.getParentList()) {
+                stale |= renamed.containsKey(p);
+            }
+            if (!stale && !Commit.isLegacy(
+                    OBJECTS.read(cID, ObjectStore.COMMIT))) {
+                kept.add(c);
+                continue;
+            }
+            c.renameParents(renamed);
+            renamed.put(cID, c.saveCommit());
+        }
+        TreeSet<String> forgotten = new TreeSet<>(renamed.keySet());
+        for (String branchName : Utils.plainFilenamesIn(BRANCHESFOLDER)) {
+            File b = Utils.join(BRANCHESFOLDER, branchName);
+            String cID = Utils.readContentsAsString(b);
+            setHead(branchName, renamed.getOrDefault(cID, cID));
+            forgotten.remove(renamed.getOrDefault(cID, cID));
+        }
+        for (Commit c : kept) {
+            forgotten.removeAll(c.getParentList());
+        }
+        OBJECTS.forget(forgotten);
+        for (String dir : new String[] {"blobs", "commits"}) {
+            File d = Utils.join(GITFOLDER, dir);
+            List<String> loose = Utils.plainFilenamesIn(d);
+            if (loose != null) {
+                for (String name : loose) {
+                    Utils.join(d, name).delete();
+                }
+                d.delete();
+            }
+        }
+        COMMITS.clear();
+        GRAPH.reset();
+        MESSAGES.reset();
+        System.out.println("Rewrote " + renamed.size() + " commits.");
+    }
+
+    /** Watches the working tree for changes until stopped, so that
+     * other commands need not scan all of it. */
+    public void watch() {
+        MONITOR.watch();
+    }
+
+    /** Writes back state cached during a command. */
+    public void close() {
+        OBJECTS.flush();
+        STATS.save();
+    }
+
+    /** Drops everything cached from files that other processes may have
+     * changed since it was read. */
+    static void reload() {
+        OBJECTS.reload();
+        GRAPH.reload();
+        MESSAGES.reload();
+        STATS.reload();
+    }
+
     /** Setup file system.
      * .gitlet/ -- top level folder for all persisting data
      *   - branches/ -- folder containing all data for branches
      *     - master -- text file containing String hash for current commit
      *   - head -- text file containing String hash for current commit
-     *   - commits/ -- folder containing all data for commits
+     *   - objects.pack -- append-only pack of all blobs and commits
+     *   - objects.idx -- sorted index of object offsets in the pack
+     *   - index -- stat data and blob ids of working files
+     *   - commit-graph -- parents and generations of all commits
+     *   - messages -- messages of all commits
+     *   - fsmonitor -- paths changed, logged by a running watcher
+     *   - fsmonitor-state -- working files as of the last full status
      * */
     private void setupPersistence() {
         try {
             BRANCHESFOLDER.mkdir();
             master.createNewFile();
-            COMMITSFOLDER.mkdir();
             STAGINGAREA.mkdir();
-            BLOBS.mkdir();
             repoObj.createNewFile();
         } catch (IOException e) {
             System.out.println("file or folder already exists");
@@ -48,21 +172,20 @@ public class Repository implements Serializable {
     }
 
     /** Add file for staging.
-     * @param fileName File to be staged
+     * @param name File to be staged, relative to the working directory
      */
-    public void add(String fileName) {
+    public void add(String name) {
+        String fileName = WorkTree.relative(name);
         File fileToAdd = Utils.join(CWD, fileName);
         if (!fileToAdd.exists()) {
             throw Utils.error("File does not exist.");
         }
-        byte[] contents = Utils.readContents(fileToAdd);
-        String fileUid = getUID(fileToAdd);
+        String fileUid = STATS.uid(fileName, fileToAdd);
         Commit head = commitFromFile(getHEAD());
-        boolean currCommitHas = head.getTracking().containsKey(fileName)
-                && head.getTracking().get(fileName).equals(fileUid);
+        boolean currCommitHas = fileUid.equals(head.getBlob(fileName));
 
         if (currCommitHas && _stagingAdd.containsKey(fileName)) {
-            Utils.join(STAGINGAREA, fileName).delete();
+            WorkTree.delete(STAGINGAREA, fileName);
             _stagingAdd.remove(fileName);
             return;
         } else if (currCommitHas && _stagingRm.contains(fileName)) {
@@ -72,25 +195,26 @@ public class Repository implements Serializable {
                 && _stagingAdd.get(fileName).equals(fileUid))) {
             return;
         }
-        Utils.writeContents(Utils.join(STAGINGAREA, fileName), contents);
+        WorkTree.copy(fileToAdd, STAGINGAREA, fileName);
         _stagingAdd.put(fileName, fileUid);
     }
 
     /** Remove file.
-     * @param fileName name of file
+     * @param name name of file, relative to the working directory
      */
-    public void rm(String fileName) {
+    public void rm(String name) {
+        String fileName = WorkTree.relative(name);
+        boolean tracked = commitFromFile(getHEAD()).getBlob(fileName) != null;
         if (!_stagingRm.contains(fileName) && !_stagingAdd.containsKey(fileName)
-                && !commitFromFile(getHEAD()).getTracking().
-                containsKey(fileName)) {
+                && !tracked) {
             throw Utils.error("No reason to remove the file.");
         }
         if (_stagingAdd.containsKey(fileName)) {
-            Utils.join(STAGINGAREA, fileName).delete();
+            WorkTree.delete(STAGINGAREA, fileName);
             _stagingAdd.remove(fileName);
         }
-        if (commitFromFile(getHEAD()).getTracking().containsKey(fileName)) {
-            Utils.restrictedDelete(fileName);
+        if (tracked) {
+            WorkTree.delete(CWD, fileName);
             _stagingRm.add(fileName);
         }
     }
@@ -99,24 +223,30 @@ public class Repository implements Serializable {
      * @param message Commit message
      */
     public void commit(String message) throws IOException {
-        if (Utils.plainFilenamesIn(STAGINGAREA).size() == 0
-                && _stagingRm.size() == 0) {
+        if (_stagingAdd.isEmpty() && _stagingRm.isEmpty()) {
             throw Utils.error("No changes added to the commit.");
         } else if (message.length() == 0) {
             throw Utils.error("Please enter a commit message.");
         }
+        Commit head = commitFromFile(getHEAD());
         Commit commitObj = new Commit(message, getHEAD());
-        commitObj.getTracking().putAll(commitFromFile(getHEAD()).getTracking());
-        for (File f : STAGINGAREA.listFiles()) {
-            commitObj.getTracking().put(f.getName(), getUID(f));
-            Utils.writeContents(Utils.join(BLOBS, getUID(f)),
-                    Utils.readContents(f));
+        commitObj.inherit(head);
+        try (Trace.Span s = Trace.phase("store blobs")) {
+            for (String fileName : _stagingAdd.keySet()) {
+                String blobID = stagedUID(fileName);
+                OBJECTS.writeFile(blobID, Utils.join(STAGINGAREA, fileName),
+                        head.getBlob(fileName));
+                commitObj.track(fileName, blobID);
+            }
         }
         for (String rmFile : _stagingRm) {
-            commitObj.getTracking().remove(rmFile);
+            commitObj.untrack(rmFile);
+            STATS.remove(rmFile);
         }
         clearStagingArea();
-        setHead(_currentBranch, commitObj.saveCommit());
+        try (Trace.Span s = Trace.phase("save commit")) {
+            setHead(_currentBranch, commitObj.saveCommit());
+        }
     }
 
     /** @param args arguments from main
@@ -126,9 +256,9 @@ public class Repository implements Serializable {
      */
     public void checkout(String[] args) {
         if (args.length == 2 && args[0].equals("--")) {
-            updateCWD(getHEAD(), args[1]);
+            updateCWD(getHEAD(), WorkTree.relative(args[1]));
         } else if (args.length == 3 && args[1].equals("--")) {
-            updateCWD(lazySearch(args[0]), args[2]);
+            updateCWD(lazySearch(args[0]), WorkTree.relative(args[2]));
         } else if (args.length == 1) {
             Commit curr = commitFromFile(getHEAD());
             validateSwitch(curr, args[0]);
@@ -141,22 +271,87 @@ public class Repository implements Serializable {
         }
     }
 
-    /** Checks out all files from a specific commit.
+    /** Checks out all files from a specific commit.  Files that differ
+     * between the two commits, found by comparing their trees, are
+     * written; any other file is written only if its working copy is
+     * missing or its stat data no longer matches the cached entry, so no
+     * file is hashed.  Writes are done in parallel.
      * @param branchHead branch commit obj
      * @param curr current commit obj
      */
     private void checkoutFullCommit(Commit curr, Commit branchHead) {
-        for (String fileName: curr.getTracking().keySet()) {
-            if (!branchHead.getTracking().containsKey(fileName)) {
-                Utils.restrictedDelete(Utils.join(CWD, fileName));
+        HashMap<String, String> target = branchHead.getTracking();
+        ArrayList<String> writes = new ArrayList<>();
+        try (Trace.Span s = Trace.phase("compare trees")) {
+            TreeSet<String> changed = new TreeSet<>();
+            Tree.diff(curr.getTree(), branchHead.getTree(), "", changed);
+            for (String fileName : changed) {
+                if (!target.containsKey(fileName)) {
+                    WorkTree.delete(CWD, fileName);
+                    STATS.remove(fileName);
+                }
+            }
+            for (Map.Entry<String, String> e : target.entrySet()) {
+                if (changed.contains(e.getKey()) || !STATS.matches(
+                        e.getKey(), Utils.join(CWD, e.getKey()),
+                        e.getValue())) {
+                    writes.add(e.getKey());
+                }
             }
         }
-        for (String fileName : branchHead.getTracking().keySet()) {
-            updateCWD(branchHead.getCommitUID(), fileName);
+        try (Trace.Span s = Trace.phase("write files")) {
+            writeFiles(target, writes);
+            for (String fileName : writes) {
+                STATS.record(fileName, Utils.join(CWD, fileName),
+                        target.get(fileName));
+            }
         }
         clearStagingArea();
     }
 
+    /** Writes each of FILENAMES into the working directory with the
+     * contents of its blob in TRACKING, splitting them into batches
+     * written on a pool with one thread per core.
+     * @param tracking Map of file names to blob ids
+     * @param fileNames Names of the files to write
+     */
+    private void writeFiles(HashMap<String, String> tracking,
+                            List<String> fileNames) {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+                (fileNames.size() + BATCH - 1) / BATCH);
+        if (threads <= 1) {
+            for (String fileName : fileNames) {
+                writeBlob(fileName, tracking.get(fileName));
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<?>> batches = new ArrayList<>();
+            for (int i = 0; i < fileNames.size(); i += BATCH) {
+                List<String> batch = fileNames.subList(i,
+                        Math.min(i + BATCH, fileNames.size()));
+                batches.add(pool.submit(() -> {
+                    for (String fileName : batch) {
+                        writeBlob(fileName, tracking.get(fileName));
+                    }
+                }));
+            }
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw Utils.error("Cannot write working files.");
+        } catch (InterruptedException e) {
+            throw Utils.error("Checkout interrupted.");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     /** Ensure it is okay to switch branches, else throw errors.
      * @param curr Current commit obj
      * @param bName Name of given branch
@@ -172,16 +367,19 @@ public class Repository implements Serializable {
         checkUntracked(curr, branchHeadObj);
     }
 
-    /** Check for untracked files.
+    /** Check for untracked files anywhere under the working directory.
      * @param curr Current commit obj
      * @param dest Given commit obj
      */
     private void checkUntracked(Commit curr, Commit dest) {
-        for (File f : CWD.listFiles()) {
-            if (!curr.getTracking().containsKey(f.getName())) {
-                if (dest.getTracking().containsKey(f.getName())) {
-                    throw Utils.error("There is an un-tracked file in the way;"
-                            + " delete it, or add and commit it first.");
+        try (Trace.Span s = Trace.phase("check untracked")) {
+            HashMap<String, String> tracked = curr.getTracking();
+            HashMap<String, String> incoming = dest.getTracking();
+            for (String fileName : workingFiles()) {
+                if (!tracked.containsKey(fileName)
+                        && incoming.containsKey(fileName)) {
+                    throw Utils.error("There is an un-tracked file in the"
+                            + " way; delete it, or add and commit it first.");
                 }
             }
         }
@@ -194,8 +392,9 @@ public class Repository implements Serializable {
     private void updateCWD(String cID, String fileName) {
         File f = Utils.join(CWD, fileName);
         String blobID = getBlobID(cID, fileName);
-        Utils.restrictedDelete(f);
-        Utils.writeContents(f, Utils.readContents(Utils.join(BLOBS, blobID)));
+        WorkTree.delete(CWD, fileName);
+        writeBlob(fileName, blobID);
+        STATS.record(fileName, f, blobID);
     }
 
     /** Check out all files tracked by given commit.
@@ -221,44 +420,132 @@ public class Repository implements Serializable {
 
     /** Display info for each commit starting at head going backwards. */
     public void log() {
-        Commit curr = commitFromFile(getHEAD());
-        while (!curr.getParent().equals("")) {
-            printLog(curr);
-            curr = commitFromFile(curr.getParent());
+        int head = GRAPH.position(getHEAD());
+        if (head == CommitGraph.NONE) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        for (int p = head; p != CommitGraph.NONE; p = GRAPH.parent(p)) {
+            printLog(commitFromFile(GRAPH.id(p)));
         }
-        printLog(curr);
     }
 
     /** Display info of every commit ever made. */
     public void globalLog() {
-        for (String cID : Utils.plainFilenamesIn(COMMITSFOLDER)) {
+        for (String cID : OBJECTS.ids(ObjectStore.COMMIT)) {
             printLog(commitFromFile(cID));
         }
     }
 
     /** Print out IDs of commits with given message.
-     * @param message Given commit message
-     */
-    public void find(String message) {
-        boolean found = false;
-        for (String cID : Utils.plainFilenamesIn(COMMITSFOLDER)) {
-            if (commitFromFile(cID).getMessage().equals(message)) {
-                System.out.println(cID);
-                found = true;
+     * find [message] -- commits with exactly this message
+     * find --word [word] -- commits whose message has this word
+     * find --contains [text] -- commits whose message contains text
+     * find --regex [pattern] -- commits whose message matches pattern
+     * @param args arguments from main
+     */
+    public void find(String[] args) {
+        List<String> found;
+        if (args.length == 1) {
+            found = MESSAGES.exact(args[0]);
+        } else if (args.length == 2 && args[0].equals("--word")) {
+            found = MESSAGES.word(args[1]);
+        } else if (args.length == 2 && args[0].equals("--contains")) {
+            found = MESSAGES.containing(args[1]);
+        } else if (args.length == 2 && args[0].equals("--regex")) {
+            try {
+                found = MESSAGES.matching(Pattern.compile(args[1]));
+            } catch (PatternSyntaxException e) {
+                throw Utils.error("Invalid pattern.");
             }
+        } else {
+            throw Utils.error("Incorrect operands.");
         }
-        if (!found) {
+        if (found.isEmpty()) {
             throw Utils.error("Found no commit with that message.");
         }
+        for (String cID : found) {
+            System.out.println(cID);
+        }
     }
 
-    /** Display current status of repository. */
+    /** Display current status of repository.  The working tree is
+     * scanned once, in parallel, before any section is printed; with a
+     * watcher running, only the files it saw change are looked at. */
     public void status() {
-        branchStatus();
-        addFileStatus();
-        rmFileStatus();
-        modificationsStatus();
-        untrackedStatus();
+        FsMonitor.View view;
+        List<String> files;
+        try (Trace.Span s = Trace.phase("list files")) {
+            view = MONITOR.view();
+            files = view == null ? WorkTree.files(CWD) : view.files();
+        }
+        StatusScan scan;
+        try (Trace.Span s = Trace.phase("scan files")) {
+            scan = StatusScan.run(files,
+                    view == null ? null : view.changed(),
+                    commitFromFile(getHEAD()).getTracking(),
+                    _stagingAdd, _stagingRm);
+            if (view != null) {
+                view.save();
+            }
+        }
+        try (Trace.Span s = Trace.phase("print")) {
+            branchStatus();
+            addFileStatus();
+            rmFileStatus();
+            printSection("Modifications Not Staged For Commit",
+                    scan.modifications());
+            printSection("Untracked Files", scan.untracked());
+        }
+    }
+
+    /** Prints the differences between two versions of the tracked
+     * files, in unified format.  With no operands, the staging area is
+     * compared with the working directory; with --staged, a commit, the
+     * head unless one is named, is compared with the staging area.
+     * Otherwise one named commit is compared with the working directory,
+     * and two with each other.  Commits are named by branch or by id.
+     * Files with equal blob ids on both sides are never read.
+     * @param args Operands of the command
+     */
+    public void diff(String[] args) throws IOException {
+        boolean staged = args.length > 0 && args[0].equals("--staged");
+        int named = args.length - (staged ? 1 : 0);
+        if (named > (staged ? 1 : 2)) {
+            throw Utils.error("Incorrect operands.");
+        }
+        HashMap<String, String> old, now;
+        TreeSet<String> paths = new TreeSet<>();
+        try (Trace.Span s = Trace.phase("compare ids")) {
+            if (named == 2) {
+                Commit a = revision(args[0]), b = revision(args[1]);
+                Tree.diff(a.getTree(), b.getTree(), "", paths);
+                old = a.getTracking();
+                now = b.getTracking();
+            } else {
+                HashMap<String, String> index = indexTracking();
+                if (named == 1) {
+                    old = revision(args[args.length - 1]).getTracking();
+                } else {
+                    old = staged ? commitFromFile(getHEAD()).getTracking()
+                            : index;
+                }
+                paths.addAll(old.keySet());
+                paths.addAll(index.keySet());
+                now = staged ? index : workingIds(paths);
+            }
+            paths.removeIf(p -> Objects.equals(old.get(p), now.get(p)));
+        }
+        Function<String, byte[]> after = p -> blobContents(p, now.get(p));
+        if (!staged && named < 2) {
+            after = p -> now.containsKey(p)
+                    ? Utils.readContents(Utils.join(CWD, p)) : null;
+        }
+        try (Trace.Span s = Trace.phase("print")) {
+            BufferedOutputStream out = new BufferedOutputStream(System.out);
+            UnifiedDiff.print(new ArrayList<>(paths),
+                    p -> blobContents(p, old.get(p)), after, out);
+            out.flush();
+        }
     }
 
     /** Delete branch with given name.
@@ -289,7 +576,7 @@ public class Repository implements Serializable {
     /** Print status of files staged for addition. */
     private void addFileStatus() {
         printHeader("Staged Files");
-        for (String fileName : Utils.plainFilenamesIn(STAGINGAREA)) {
+        for (String fileName : new TreeSet<>(_stagingAdd.keySet())) {
             System.out.println(fileName);
         }
         System.out.println();
@@ -304,37 +591,14 @@ public class Repository implements Serializable {
         System.out.println();
     }
 
-    /** Print modification status. */
-    private void modificationsStatus() {
-        printHeader("Modifications Not Staged For Commit");
-        Commit curr = commitFromFile(getHEAD());
-        TreeSet<String> fileNamesInCommit = new TreeSet<>(curr.
-                getTracking().keySet());
-        for (String key : fileNamesInCommit) {
-            if (!Utils.join(CWD, key).exists() && !_stagingRm.contains(key)) {
-                System.out.println(key + " (deleted)");
-                continue;
-            }
-            if (Utils.join(CWD, key).exists() && !getBlobID(curr.
-                    getCommitUID(), key).equals(getUID(Utils.join(CWD, key)))) {
-                System.out.println(key + " (modified)");
-            }
-        }
-        System.out.println();
-    }
-
-    /** Print status of untracked files. */
-    private void untrackedStatus() {
-        printHeader("Untracked Files");
-        Commit curr = commitFromFile(getHEAD());
-        for (File f : CWD.listFiles()) {
-            if (!f.isDirectory()) {
-                boolean inCurr = curr.getTracking().containsKey(f.getName());
-                if (!inCurr && (!_stagingAdd.containsKey(f.getName())
-                        || _stagingRm.contains(f.getName()))) {
-                    System.out.println(f.getName());
-                }
-            }
+    /** Print a status section.
+     * @param title Section title
+     * @param lines Sorted entries of the section
+     */
+    private void printSection(String title, List<String> lines) {
+        printHeader(title);
+        for (String line : lines) {
+            System.out.println(line);
         }
         System.out.println();
     }
@@ -345,101 +609,75 @@ public class Repository implements Serializable {
     public void merge(String otherName) throws IOException {
         Commit curr = commitFromFile(getHEAD());
         Commit other = validateMerge(curr, otherName);
-        Commit split = findSplitPt(curr, other);
+        MergeBase search = new MergeBase(GRAPH);
+        int here = GRAPH.position(curr.getCommitUID());
+        int there = GRAPH.position(other.getCommitUID());
+        boolean behind, ahead;
+        try (Trace.Span s = Trace.phase("check ancestry")) {
+            behind = search.isAncestor(here, there);
+            ahead = !behind && search.isAncestor(there, here);
+        }
         conflict = false;
-        if (split.getCommitUID().equals(getHEAD())) {
+        if (behind) {
             checkout(new String[] {otherName});
             System.out.println("Current branch fast-forwarded");
             return;
-        } else if (split.getCommitUID().equals(Utils.readContentsAsString(Utils.
-                join(BRANCHESFOLDER, otherName)))) {
+        } else if (ahead) {
             System.out.println("Given branch is an ancestor of the current"
                     + " branch.");
             return;
         }
-        noConflict(curr, other, split);
-
-        HashSet<String> allFiles = new HashSet<>();
-        allFiles.addAll(other.getTracking().keySet());
-        allFiles.addAll(curr.getTracking().keySet());
-        allFiles.addAll(split.getTracking().keySet());
-        for (String fileName : allFiles) {
-            boolean currHasFile = curr.getTracking().containsKey(fileName);
-            boolean otherHasFile = other.getTracking().containsKey(fileName);
-            boolean splitHasFile = split.getTracking().containsKey(fileName);
-            boolean scenario1 = !currHasFile && otherHasFile;
-            boolean scenario2 = !otherHasFile && currHasFile;
-            boolean scenario3 = otherHasFile && currHasFile;
-
-            if (!splitHasFile) {
-                if (scenario3) {
-                    if (isModified(fileName, other, curr)) {
-                        replaceConflict(fileName, curr, other);
-                    }
-                }
-            } else {
-                if (scenario1) {
-                    if (isModified(fileName, split, other)) {
-                        replaceConflict(fileName, null, other);
-                    }
-                }
-                if (scenario2) {
-                    if (isModified(fileName, split, curr)) {
-                        replaceConflict(fileName, curr, null);
-                    }
-                }
-                if (scenario3) {
-                    if (isModified(fileName, split, curr)
-                            && isModified(fileName, curr, other)) {
-                        replaceConflict(fileName, curr, other);
-                    }
-                }
-            }
+        Commit split;
+        try (Trace.Span s = Trace.phase("find split point")) {
+            split = findSplitPt(search, here, there);
+        }
+        List<MergePlan.Action> plan;
+        try (Trace.Span s = Trace.phase("plan merge")) {
+            plan = MergePlan.plan(split, curr, other);
+        }
+        try (Trace.Span s = Trace.phase("merge files")) {
+            applyMerge(plan);
+        }
+        try (Trace.Span s = Trace.phase("merge commit")) {
+            mergeCommit("Merged " + otherName + " into " + _currentBranch
+                    + ".", other.getCommitUID());
         }
-        mergeCommit("Merged " + otherName + " into " + _currentBranch
-                + ".", other.getCommitUID());
         if (conflict) {
             System.out.println("Encountered a merge conflict.");
         }
     }
 
-    /** Check if blobs btwn 2 commits differ.
-     * @param fileName Name of file to be checked from blobs of a and b
-     * @param a Commit a
-     * @param b Commit b
-     * @return Whether the two blobs differ
-     */
-    private boolean isModified(String fileName, Commit a, Commit b) {
-        byte[] contentA = Utils.readContents(Utils.
-                join(BLOBS, getBlobID(a.getCommitUID(), fileName)));
-        byte[] contentB = Utils.readContents(Utils.
-                join(BLOBS, getBlobID(b.getCommitUID(), fileName)));
-        return !Arrays.equals(contentA, contentB);
-    }
-
-    /** Do stuff required for merge with no conflicts.
-     * @param curr current branch head
-     * @param other given branch head
-     * @param split split point
+    /** Carries out the merge actions PLAN in the working tree and the
+     * staging area.  The other branch's versions are written out in
+     * parallel and staged by blob id, so their contents are read only
+     * once; only conflicting files are read from both sides.
+     * @param plan Actions of the merge
      */
-    private void noConflict(Commit curr, Commit other, Commit split) {
-        for (String fileName : other.getTracking().keySet()) {
-            boolean splitHasFile = split.getTracking().containsKey(fileName);
-            boolean currHasFile = curr.getTracking().containsKey(fileName);
-            if (!splitHasFile && !currHasFile) {
-                setAndStage(other, fileName);
-            } else if (currHasFile && !isModified(fileName, curr, split)
-                && isModified(fileName, other, split)) {
-                setAndStage(other, fileName);
+    private void applyMerge(List<MergePlan.Action> plan) {
+        HashMap<String, String> theirs = new HashMap<>();
+        for (MergePlan.Action a : plan) {
+            switch (a.kind()) {
+            case TAKE_THEIRS:
+                theirs.put(a.path(), a.theirs());
+                break;
+            case DELETE:
+                WorkTree.delete(CWD, a.path());
+                STATS.remove(a.path());
+                _stagingRm.add(a.path());
+                break;
+            case CONFLICT:
+                replaceConflict(a.path(), a.base(), a.ours(), a.theirs());
+                break;
+            default:
+                break;
             }
         }
-        for (String fileName : split.getTracking().keySet()) {
-            boolean currHasFile = curr.getTracking().containsKey(fileName);
-            boolean otherHasFile = other.getTracking().containsKey(fileName);
-            if (currHasFile && !isModified(fileName, curr, split)
-                    && !otherHasFile) {
-                rm(fileName);
-            }
+        ArrayList<String> paths = new ArrayList<>(theirs.keySet());
+        writeFiles(theirs, paths);
+        for (String fileName : paths) {
+            STATS.record(fileName, Utils.join(CWD, fileName),
+                    theirs.get(fileName));
+            _stagingAdd.put(fileName, theirs.get(fileName));
         }
     }
 
@@ -449,93 +687,80 @@ public class Repository implements Serializable {
      * @throws IOException for save commit
      */
     private void mergeCommit(String message, String pID) throws IOException {
-        if (Utils.plainFilenamesIn(STAGINGAREA).size() == 0
-                && _stagingRm.size() == 0) {
+        if (_stagingAdd.isEmpty() && _stagingRm.isEmpty()) {
             throw Utils.error("No changes added to the commit.");
         } else if (message.length() == 0) {
             throw Utils.error("Please enter a commit message.");
         }
+        Commit head = commitFromFile(getHEAD());
         Commit commitObj = new Commit(message, getHEAD());
-        commitObj.getTracking().putAll(commitFromFile(getHEAD()).getTracking());
-        for (File f : STAGINGAREA.listFiles()) {
-            commitObj.getTracking().put(f.getName(), getUID(f));
-            Utils.writeContents(Utils.join(BLOBS, getUID(f)),
-                    Utils.readContents(f));
+        commitObj.inherit(head);
+        for (String fileName : _stagingAdd.keySet()) {
+            String blobID = stagedUID(fileName);
+            if (!OBJECTS.contains(blobID)) {
+                OBJECTS.writeFile(blobID, Utils.join(STAGINGAREA, fileName),
+                        head.getBlob(fileName));
+            }
+            commitObj.track(fileName, blobID);
         }
         for (String rmFile : _stagingRm) {
-            commitObj.getTracking().remove(rmFile);
+            commitObj.untrack(rmFile);
+            STATS.remove(rmFile);
         }
         commitObj.setMergeParent(pID);
         clearStagingArea();
         setHead(_currentBranch, commitObj.saveCommit());
     }
 
-    /** Replace conflicting files with appropriate format.
+    /** Replace a file both branches changed with the merge of their
+     * versions, merged line by line when both have one, with conflicts
+     * marked in the appropriate format.
      * @param fileName File to be replaced
-     * @param a Commit obj a
-     * @param b Commit obj b
-     */
-    private void replaceConflict(String fileName, Commit a, Commit b) {
-        String contentA = a == null ? "" : Utils.readContentsAsString(Utils.
-                join(BLOBS, getBlobID(a.getCommitUID(), fileName)));
-        String contentB = b == null ? "" : Utils.readContentsAsString(Utils.
-                join(BLOBS, getBlobID(b.getCommitUID(), fileName)));
+     * @param base Blob id of the file in the split point, or null
+     * @param ours Blob id of the file in the current head, or null
+     * @param theirs Blob id of the file in the other head, or null
+     */
+    private void replaceConflict(String fileName, String base, String ours,
+                                 String theirs) {
+        if (ours != null && theirs != null) {
+            ByteArrayOutputStream merged = new ByteArrayOutputStream();
+            boolean clean;
+            try {
+                clean = MergeText.merge(base == null ? new byte[0]
+                        : readBlob(base), readBlob(ours), readBlob(theirs),
+                        merged);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            WorkTree.write(CWD, fileName, merged.toByteArray());
+            add(fileName);
+            conflict |= !clean;
+            return;
+        }
+        String contentA = ours == null ? ""
+                : new String(readBlob(ours), StandardCharsets.UTF_8);
+        String contentB = theirs == null ? ""
+                : new String(readBlob(theirs), StandardCharsets.UTF_8);
         String concatContent = "<<<<<<< HEAD\n" + contentA + "=======\n"
                 + contentB + ">>>>>>>\n";
-        Utils.writeContents(Utils.join(CWD, fileName), concatContent);
+        WorkTree.write(CWD, fileName, concatContent);
         add(fileName);
         conflict = true;
     }
 
-
-    /** Checkout and stage for addition.
-     * @param obj Commit where file is pulled from
-     * @param fileName File to be set and staged
-     */
-    private void setAndStage(Commit obj, String fileName) {
-        checkout(new String[] {obj.getCommitUID(), "--", fileName});
-        add(fileName);
-    }
-
-    /**
-     * @param curr Current branch head commit
-     * @param other Other branch head commit
-     * @return Split point of given branches
-     */
-    private Commit findSplitPt(Commit curr, Commit other) {
-        HashSet<String> otherAncestors = new HashSet<>();
-        findAllAncestors(other.getCommitUID(), otherAncestors);
-        return findLatest(otherAncestors, curr);
-    }
-
     /**
-     * @param set Set of ancestors to compare
-     * @param c Commit to be checked
-     * @return Latest common ancestor
-     */
-    private Commit findLatest(HashSet<String> set, Commit c) {
-        Deque<String> deque = new ArrayDeque<String>();
-        deque.add(c.getCommitUID());
-        while (!deque.isEmpty()) {
-            String match = deque.poll();
-            if (set.contains(match)) {
-                return commitFromFile(match);
-            } else {
-                deque.addAll(c.getParentList());
-            }
-        }
-        return null;
-    }
-
-    /** Adds all ancestors for given branch.
-     * @param cID Given commit id
-     * @param set Set of ancestors
+     * @param search Engine walking the commit graph
+     * @param curr Position of the current branch head commit
+     * @param other Position of the other branch head commit
+     * @return Split point of given branches, the newest of their best
+     * common ancestors
      */
-    private void findAllAncestors(String cID, HashSet<String> set) {
-        set.add(cID);
-        for (String parentID : commitFromFile(cID).getParentList()) {
-            findAllAncestors(parentID, set);
+    private Commit findSplitPt(MergeBase search, int curr, int other) {
+        int[] bases = search.bases(curr, other);
+        if (bases.length == 0) {
+            throw Utils.error("Branches share no history.");
         }
+        return commitFromFile(GRAPH.id(bases[0]));
     }
 
     /** @return Commit obj after checking if merge is possible
@@ -562,7 +787,7 @@ public class Repository implements Serializable {
      * @param fileName Name of file
      */
     private String getBlobID(String cID, String fileName) {
-        String blobID = commitFromFile(cID).getTracking().get(fileName);
+        String blobID = commitFromFile(cID).getBlob(fileName);
         if (blobID == null) {
             throw Utils.error("File does not exist in this commit");
         }
@@ -573,29 +798,31 @@ public class Repository implements Serializable {
      * @param branchName Name of branch
      * @param cID Commit sha id
      */
-    private void setHead(String branchName, String cID) {
+    void setHead(String branchName, String cID) {
+        OBJECTS.flush();
         Utils.writeContents(Utils.join(BRANCHESFOLDER, branchName), cID);
     }
 
     /** Clears staging area directory and add/Rm hashmap,treeSet. */
     private void clearStagingArea() {
-        for (File f : STAGINGAREA.listFiles()) {
-            f.delete();
+        for (String fileName : WorkTree.files(STAGINGAREA)) {
+            WorkTree.delete(STAGINGAREA, fileName);
         }
         _stagingAdd.clear();
         _stagingRm.clear();
     }
 
-    /** @return linear search for full commit id.
+    /** @return Full commit id of the only commit whose id starts with
+     * PARTIAL, or PARTIAL itself if there is none
      * @param partial Takes in partial cID
      */
     private String lazySearch(String partial) {
-        for (String cID : Utils.plainFilenamesIn(COMMITSFOLDER)) {
-            if (cID.startsWith(partial)) {
-                return cID;
-            }
+        List<String> matches = OBJECTS.ids(partial, ObjectStore.COMMIT);
+        if (matches.size() > 1) {
+            throw Utils.error("Ambiguous commit id %s; it matches %d commits.",
+                    partial, matches.size());
         }
-        return partial;
+        return matches.isEmpty() ? partial : matches.get(0);
     }
 
     /** @param c Commit object for metadata usage */
@@ -618,11 +845,77 @@ public class Repository implements Serializable {
         System.out.println("=== " + str + " ===");
     }
 
-    /** @return sha1 for appropriate file object
-     * @param f File f to be serialized
+    /** @return sha1 id the contents of F are stored under
+     * @param f File f to be hashed
      */
     private String getUID(File f) {
-        return Utils.sha1(Utils.serialize(Utils.readContents(f)));
+        return Utils.sha1Contents(f);
+    }
+
+    /** @return Sorted paths of every file in the working directory */
+    private List<String> workingFiles() {
+        FsMonitor.View view = MONITOR.view();
+        return view == null ? WorkTree.files(CWD) : view.files();
+    }
+
+    /** @return sha1 id of the file staged as FILENAME, as recorded when
+     * it was added
+     * @param fileName Path of the file in the staging area
+     */
+    private String stagedUID(String fileName) {
+        String uid = _stagingAdd.get(fileName);
+        return uid != null ? uid : getUID(Utils.join(STAGINGAREA, fileName));
+    }
+
+    /** @return The commit NAME names, as a branch or a commit id
+     * @param name Branch name, or full or abbreviated commit id
+     */
+    private Commit revision(String name) {
+        File branch = Utils.join(BRANCHESFOLDER, name);
+        return commitFromFile(branch.isFile()
+                ? Utils.readContentsAsString(branch) : lazySearch(name));
+    }
+
+    /** @return Blob id of every file in the staging area: those of the
+     * head commit, with staged files added and removed files left out */
+    private HashMap<String, String> indexTracking() {
+        HashMap<String, String> index = new HashMap<>(
+                commitFromFile(getHEAD()).getTracking());
+        index.putAll(_stagingAdd);
+        for (String fileName : _stagingRm) {
+            index.remove(fileName);
+        }
+        return index;
+    }
+
+    /** @return Blob id of the working copy of each of PATHS that is a
+     * plain file in the working directory
+     * @param paths Relative paths of files
+     */
+    private HashMap<String, String> workingIds(Iterable<String> paths) {
+        HashMap<String, String> ids = new HashMap<>();
+        for (String path : paths) {
+            File f = Utils.join(CWD, path);
+            if (f.isFile()) {
+                ids.put(path, STATS.uid(path, f));
+            }
+        }
+        return ids;
+    }
+
+    /** @return Contents of blob BLOBID, stored or, if it has only been
+     * staged so far, in the staging area as FILENAME; or null if BLOBID
+     * is null
+     * @param fileName Path of the file
+     * @param blobID Blob id, or null
+     */
+    private byte[] blobContents(String fileName, String blobID) {
+        if (blobID == null) {
+            return null;
+        } else if (OBJECTS.contains(blobID)) {
+            return readBlob(blobID);
+        }
+        return Utils.readContents(Utils.join(STAGINGAREA, fileName));
     }
 
     /** @return head commit hash */
@@ -635,11 +928,40 @@ public class Repository implements Serializable {
      * @param cID Sha1 id for commit obj
      */
     public Commit commitFromFile(String cID) {
-        File c = Utils.join(COMMITSFOLDER, cID);
-        if (!c.exists()) {
+        Commit c = Commit.read(cID);
+        if (c == null) {
             throw Utils.error("No commit with that id exists.");
         }
-        return Utils.readObject(c, Commit.class);
+        return c;
+    }
+
+    /** @return contents of blob from storage
+     * @param blobID Sha1 id for blob
+     */
+    private byte[] readBlob(String blobID) {
+        byte[] data = OBJECTS.read(blobID, ObjectStore.BLOB);
+        if (data == null) {
+            throw Utils.error("No blob with that id exists.");
+        }
+        return data;
+    }
+
+    /** Writes the contents of blob BLOBID to FILENAME in the working
+     * directory, one chunk at a time if it is stored in chunks.
+     * @param fileName Path of the file
+     * @param blobID Sha1 id for blob
+     */
+    private void writeBlob(String fileName, String blobID) {
+        long written;
+        try (OutputStream out = WorkTree.create(CWD, fileName)) {
+            written = OBJECTS.readTo(blobID, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (written < 0) {
+            throw Utils.error("No blob with that id exists.");
+        }
+        Trace.count(Trace.Counter.FILE_BYTES_WRITTEN, written);
     }
 
     /** @return Path to master file */
@@ -662,7 +984,17 @@ public class Repository implements Serializable {
     /** Keep track of current branch name. */
     private String _currentBranch;
 
+    /** Deflate level of new objects, or null for the default. */
+    private Integer _compressionLevel;
+
     /* ----------------- Static class variables ------------------ */
+    /** Serialization version, pinned so repositories written by earlier
+     *  builds still load. */
+    private static final long serialVersionUID = 1175029394626685342L;
+
+    /** Number of files written together by one checkout task. */
+    private static final int BATCH = 64;
+
     /** Merge conflict? */
     private static boolean conflict = false;
 
@@ -678,15 +1010,38 @@ public class Repository implements Serializable {
     /** Path for master file. */
     private static File master = Utils.join(BRANCHESFOLDER, "master");
 
-    /** Path for "commits/". */
+    /** Path for "commits/", where repositories that predate the object
+     *  pack kept their commits. */
     static final File COMMITSFOLDER = Utils.join(GITFOLDER, "commits");
 
     /** Path for "stagingArea/". */
     static final File STAGINGAREA = Utils.join(GITFOLDER, "stagingArea");
 
-    /** Path for "blobs/". */
+    /** Path for "blobs/", where repositories that predate the object
+     *  pack kept their blobs. */
     static final File BLOBS = Utils.join(GITFOLDER, "blobs");
 
+    /** Pack of all blobs and commits. */
+    static final ObjectStore OBJECTS = new ObjectStore(GITFOLDER);
+
+    /** Recently read commits. */
+    static final CommitCache COMMITS = new CommitCache(1024);
+
+    /** Parent links and generation numbers of all commits. */
+    static final CommitGraph GRAPH =
+            new CommitGraph(Utils.join(GITFOLDER, "commit-graph"));
+
+    /** Messages of all commits. */
+    static final MessageIndex MESSAGES =
+            new MessageIndex(Utils.join(GITFOLDER, "messages"));
+
+    /** Cached blob ids of working files. */
+    static final StatCache STATS =
+            new StatCache(Utils.join(GITFOLDER, "index"));
+
+    /** Watcher of the working tree, if one is running. */
+    static final FsMonitor MONITOR = new FsMonitor(GITFOLDER);
+
     /** Path for repo object. */
     private static File repoObj = Utils.join(GITFOLDER, "repoObj");
 
@@ -0,0 +1,243 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/** Long-lived process that runs commands sent by Client over a Unix
+ *  domain socket, keeping the repository and its caches loaded between
+ *  them.
+ *
+ *  A request is [count:4] followed by count [length:4][UTF-8 operand]
+ *  frames, the command first.  The reply is a stream of
+ *  [kind:1][length:4][bytes] frames carrying standard output and
+ *  standard error as the command writes them, ending with an EXIT frame
+ *  holding the exit status.  Commands run one at a time in the server's
+ *  working directory.  Before each one, the files in .gitlet that are
+ *  cached in memory are compared with how the server left them, and if
+ *  any other process has changed them everything cached is dropped.
+ *  @author Ishil Puri
+ */
+class Server {
+
+    /** Creates a server listening on SOCKET.
+     *  @param socket Path of the socket file
+     */
+    Server(File socket) {
+        _socket = socket;
+    }
+
+    /** Serves commands until the process is stopped. */
+    void serve() throws IOException {
+        if (_socket.exists()) {
+            try (SocketChannel ch = SocketChannel.open(
+                    UnixDomainSocketAddress.of(_socket.toPath()))) {
+                throw Utils.error("A server is already running.");
+            } catch (IOException excp) {
+                _socket.delete();
+            }
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(_socket.toPath()));
+            _socket.deleteOnExit();
+            System.out.println("Serving on " + _socket + ".");
+            _fingerprint = fingerprint();
+            while (true) {
+                try (SocketChannel ch = server.accept()) {
+                    handle(ch);
+                } catch (IOException excp) {
+                    continue;
+                } catch (RuntimeException excp) {
+                    excp.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /** Runs the command read from CH, sending back its output and exit
+     *  status.
+     *  @param ch Connection to a client
+     */
+    private void handle(SocketChannel ch) throws IOException {
+        String[] args = readArgs(ch);
+        if (!Arrays.equals(_fingerprint, fingerprint())) {
+            Main.unload();
+        }
+        PrintStream out = System.out, err = System.err;
+        PrintStream toClient = new PrintStream(new BufferedOutputStream(
+                new Frames(ch, OUT), BUFFER), false, StandardCharsets.UTF_8);
+        PrintStream errToClient = new PrintStream(new Frames(ch, ERR),
+                true, StandardCharsets.UTF_8);
+        int status = 0;
+        System.setOut(toClient);
+        System.setErr(errToClient);
+        try {
+            int cmd = args.length > 1 && args[0].equals("--trace") ? 1 : 0;
+            if (args.length > cmd && (args[cmd].equals("serve")
+                    || args[cmd].equals("watch"))) {
+                System.out.println("Cannot run this command on the server.");
+            } else if (!Main.run(args)) {
+                Main.unload();
+            }
+        } catch (IOException | RuntimeException excp) {
+            excp.printStackTrace();
+            Main.unload();
+            status = 1;
+        } finally {
+            toClient.flush();
+            errToClient.flush();
+            System.setOut(out);
+            System.setErr(err);
+            _fingerprint = fingerprint();
+        }
+        ByteBuffer exit = ByteBuffer.allocate(FRAME_HEADER + 4);
+        exit.put(EXIT).putInt(4).putInt(status).flip();
+        while (exit.hasRemaining()) {
+            ch.write(exit);
+        }
+    }
+
+    /** @return Operands of the request read from CH, which is given up
+     *  on if the request is malformed
+     *  @param ch Connection to a client
+     */
+    private static String[] readArgs(SocketChannel ch) throws IOException {
+        String[] args = new String[readSize(ch, MAX_OPERANDS)];
+        for (int i = 0; i < args.length; i += 1) {
+            ByteBuffer raw = ByteBuffer.allocate(readSize(ch, MAX_OPERAND));
+            readFully(ch, raw);
+            args[i] = new String(raw.array(), StandardCharsets.UTF_8);
+        }
+        return args;
+    }
+
+    /** @return Next int read from CH, a count or length of at most MAX
+     *  @param ch Connection to a client
+     *  @param max Largest value allowed
+     */
+    private static int readSize(SocketChannel ch, int max)
+        throws IOException {
+        int n = readInt(ch);
+        if (n < 0 || n > max) {
+            throw new IOException("malformed request");
+        }
+        return n;
+    }
+
+    /** @return Next int read from CH
+     *  @param ch Connection
+     */
+    static int readInt(SocketChannel ch) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4);
+        readFully(ch, b);
+        return b.getInt(0);
+    }
+
+    /** Fills B from CH.
+     *  @param ch Connection
+     *  @param b Buffer to fill
+     */
+    static void readFully(SocketChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            if (ch.read(b) < 0) {
+                throw new IOException("connection closed");
+            }
+        }
+    }
+
+    /** @return Size and modification time of every file in .gitlet whose
+     *  contents are kept in memory between commands */
+    private static long[] fingerprint() {
+        long[] result = new long[2 * WATCHED.length];
+        for (int i = 0; i < WATCHED.length; i += 1) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        Utils.join(Repository.GITFOLDER, WATCHED[i]).toPath(),
+                        BasicFileAttributes.class);
+                result[2 * i] = attrs.size();
+                result[2 * i + 1] =
+                        attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            } catch (IOException excp) {
+                result[2 * i] = -1;
+            }
+        }
+        return result;
+    }
+
+    /** Stream sending what is written to it as frames of one kind. */
+    private static final class Frames extends OutputStream {
+        /** Creates a stream of frames of KIND sent on CH.
+         * @param ch Connection to the client
+         * @param kind Frame kind
+         */
+        Frames(SocketChannel ch, byte kind) {
+            _ch = ch;
+            _kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + len);
+            frame.put(_kind).putInt(len).put(b, off, len).flip();
+            while (frame.hasRemaining()) {
+                _ch.write(frame);
+            }
+        }
+
+        /** Connection to the client. */
+        private final SocketChannel _ch;
+
+        /** Frame kind. */
+        private final byte _kind;
+    }
+
+    /** Kind of a frame of standard output. */
+    static final byte OUT = 1;
+
+    /** Kind of a frame of standard error. */
+    static final byte ERR = 2;
+
+    /** Kind of the frame holding the exit status. */
+    static final byte EXIT = 3;
+
+    /** Bytes in a frame header. */
+    static final int FRAME_HEADER = 5;
+
+    /** Most operands in a request. */
+    private static final int MAX_OPERANDS = 1 << 16;
+
+    /** Most bytes in one operand of a request. */
+    private static final int MAX_OPERAND = 1 << 20;
+
+    /** Bytes of output sent in one frame at most. */
+    private static final int BUFFER = 8 << 10;
+
+    /** Files in .gitlet that are cached in memory between commands. */
+    private static final String[] WATCHED = {
+        "repoObj", "objects.idx", "commit-graph", "messages", "index",
+    };
+
+    /** Path of the socket file. */
+    private final File _socket;
+
+    /** Fingerprint of the cached files as the last command left them. */
+    private long[] _fingerprint;
+}
@@ -0,0 +1,307 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Cache of the blob ids of working files, keyed by path, that lets a
+ *  file be hashed only when its size, modification time or inode has
+ *  changed since it was last hashed or checked out.
+ *
+ *  The cache is kept in a single file:
+ *      index -- [magic:4][version:4][count:4] header followed by count
+ *               entries of [path length:2][path][size:8][mtime:8]
+ *               [inode:8][id:20].
+ *  As in Git, an entry is only trusted if its file was last modified
+ *  strictly before the cache itself was written; otherwise the file may
+ *  have changed again within the same clock tick and is rehashed.
+ *  Entries may be looked up and refreshed from many threads at once;
+ *  files are hashed outside the lock.
+ *  @author Ishil Puri
+ */
+class StatCache {
+
+    /** Creates a cache kept in FILE.  Nothing is read until the cache
+     *  is first used.
+     *  @param file Path of the cache file
+     */
+    StatCache(File file) {
+        _file = file;
+    }
+
+    /** @return Blob id of the working file F, named PATH, rehashing it
+     *  only if its stat data no longer matches the cached entry
+     *  @param path Name the file is tracked under
+     *  @param f The working file
+     */
+    String uid(String path, File f) {
+        Entry stat = stat(f, null);
+        Entry cached = get(path);
+        if (stat != null && cached != null && cached.sameStat(stat)
+                && cached._mtime < _writtenAt) {
+            return cached._id;
+        }
+        String id = Utils.sha1Contents(f);
+        if (stat != null) {
+            put(path, stat.withId(id));
+        }
+        return id;
+    }
+
+    /** @return Whether the working file F, named PATH, is known from
+     *  its stat data alone to have blob id ID: its entry has that id,
+     *  still matches the file and is trusted.  Nothing is hashed.
+     *  @param path Name the file is tracked under
+     *  @param f The working file
+     *  @param id Sha1 id expected
+     */
+    boolean matches(String path, File f, String id) {
+        Entry cached = get(path);
+        if (cached == null || !cached._id.equals(id)
+                || cached._mtime >= _writtenAt) {
+            return false;
+        }
+        Entry stat = stat(f, null);
+        return stat != null && cached.sameStat(stat);
+    }
+
+    /** @return Blob id last recorded for PATH without looking at the
+     *  file, for a file known not to have changed since, or null
+     *  @param path Name the file is tracked under
+     */
+    String known(String path) {
+        Entry cached = get(path);
+        return cached == null ? null : cached._id;
+    }
+
+    /** Records that the working file F, named PATH, has blob id ID,
+     *  typically just after writing it.
+     *  @param path Name the file is tracked under
+     *  @param f The working file
+     *  @param id Sha1 id of its contents
+     */
+    void record(String path, File f, String id) {
+        Entry stat = stat(f, id);
+        if (stat == null) {
+            remove(path);
+        } else {
+            put(path, stat);
+        }
+    }
+
+    /** Forgets the entry for PATH.
+     *  @param path Name the file is tracked under
+     */
+    synchronized void remove(String path) {
+        if (entries().remove(path) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Forgets every entry and unsaved change, so that the cache is
+     *  read again from disk when next used. */
+    synchronized void reload() {
+        _entries = null;
+        _writtenAt = 0;
+        _dirty = false;
+    }
+
+    /** Writes the cache back to disk if it has changed.  Entries are
+     *  trusted from then on if their files were modified before this
+     *  write, as if the cache had just been read. */
+    synchronized void save() {
+        if (!_dirty) {
+            return;
+        }
+        int size = HEADER;
+        HashMap<String, byte[]> names = new HashMap<>();
+        for (String path : _entries.keySet()) {
+            byte[] name = path.getBytes(StandardCharsets.UTF_8);
+            names.put(path, name);
+            size += 2 + name.length + ENTRY;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION).putInt(_entries.size());
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            byte[] name = names.get(e.getKey());
+            Entry v = e.getValue();
+            out.putShort((short) name.length).put(name).putLong(v._size)
+                    .putLong(v._mtime).putLong(v._inode)
+                    .put(Utils.uidToBytes(v._id));
+        }
+        File tmp = new File(_file.getPath() + ".lock");
+        Utils.writeContents(tmp, out.array());
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            _writtenAt = Files.getLastModifiedTime(_file.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot update stat cache.");
+        }
+        _dirty = false;
+    }
+
+    /** Stores entry E for PATH.
+     *  @param path Name the file is tracked under
+     *  @param e Stat data and blob id of the file
+     */
+    private synchronized void put(String path, Entry e) {
+        entries().put(path, e);
+        _dirty = true;
+    }
+
+    /** @return Cached entry for PATH, or null
+     *  @param path Name the file is tracked under
+     */
+    private synchronized Entry get(String path) {
+        return entries().get(path);
+    }
+
+    /** @return Cached entries, read from disk on first use */
+    private synchronized HashMap<String, Entry> entries() {
+        if (_entries != null) {
+            return _entries;
+        }
+        _entries = new HashMap<>();
+        if (!_file.isFile()) {
+            return _entries;
+        }
+        try {
+            _writtenAt = Files.getLastModifiedTime(_file.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return _entries;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(_file));
+        if (in.remaining() < HEADER || in.getInt() != MAGIC
+                || in.getInt() != VERSION) {
+            return _entries;
+        }
+        byte[] id = new byte[ID_BYTES];
+        for (int n = in.getInt(); n > 0; n -= 1) {
+            byte[] name = new byte[in.getShort() & 0xffff];
+            in.get(name);
+            long size = in.getLong(), mtime = in.getLong(),
+                    inode = in.getLong();
+            in.get(id);
+            _entries.put(new String(name, StandardCharsets.UTF_8),
+                    new Entry(size, mtime, inode, Utils.bytesToUid(id, 0)));
+        }
+        return _entries;
+    }
+
+    /** @return Stat data of F with blob id ID, or null if F is not a
+     *  plain file
+     *  @param f File to stat
+     *  @param id Sha1 id to attach, or null
+     */
+    private static Entry stat(File f, String id) {
+        Path p = f.toPath();
+        try {
+            BasicFileAttributes attrs =
+                    Files.readAttributes(p, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            return new Entry(attrs.size(),
+                    attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    inode(p), id);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** @return Inode number of P, or 0 where the platform has none
+     *  @param p File path
+     */
+    private static long inode(Path p) {
+        try {
+            Object ino = Files.getAttribute(p, "unix:ino");
+            return ino instanceof Long ? (Long) ino : 0;
+        } catch (IOException | UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            return 0;
+        }
+    }
+
+    /** Stat data and blob id of one working file. */
+    private static final class Entry {
+        /** Creates an entry.
+         * @param size File size in bytes
+         * @param mtime Modification time in nanoseconds
+         * @param inode Inode number, or 0
+         * @param id Sha1 id of the contents, or null
+         */
+        Entry(long size, long mtime, long inode, String id) {
+            _size = size;
+            _mtime = mtime;
+            _inode = inode;
+            _id = id;
+        }
+
+        /** @return This stat data with blob id ID
+         *  @param id Sha1 id of the contents
+         */
+        Entry withId(String id) {
+            return new Entry(_size, _mtime, _inode, id);
+        }
+
+        /** @return Whether E has the same stat data as this entry
+         *  @param e Fresh stat data
+         */
+        boolean sameStat(Entry e) {
+            return _size == e._size && _mtime == e._mtime
+                    && _inode == e._inode;
+        }
+
+        /** File size in bytes. */
+        private final long _size;
+
+        /** Modification time in nanoseconds. */
+        private final long _mtime;
+
+        /** Inode number, or 0. */
+        private final long _inode;
+
+        /** Sha1 id of the contents. */
+        private final String _id;
+    }
+
+    /** Magic number at the start of the cache file ("GSTC"). */
+    private static final int MAGIC = 0x47535443;
+
+    /** Cache file format version. */
+    private static final int VERSION = 1;
+
+    /** Bytes in the cache file header. */
+    private static final int HEADER = 12;
+
+    /** Bytes in a raw sha1 id. */
+    private static final int ID_BYTES = 20;
+
+    /** Bytes in one entry after its path. */
+    private static final int ENTRY = 24 + ID_BYTES;
+
+    /** Path of the cache file. */
+    private final File _file;
+
+    /** Entries by path, or null if not yet read. */
+    private HashMap<String, Entry> _entries;
+
+    /** Modification time of the cache file when it was last read or
+     *  written, in nanoseconds, or 0 if there was none. */
+    private long _writtenAt;
+
+    /** Whether _entries differs from the cache file. */
+    private boolean _dirty;
+}
@@ -0,0 +1,198 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** One pass over the working tree that sorts each file into the status
+ *  sections it belongs to.
+ *
+ *  The sorted paths of the working tree are split in halves until each
+ *  range is at most SPLIT paths long, and the ranges are classified on
+ *  the common fork-join pool, hashing files that the stat cache cannot
+ *  vouch for as they go.  Each range writes only its own slots of a
+ *  shared array, so reading the array in order afterwards gives every
+ *  section already sorted.
+ *  @author Ishil Puri
+ */
+class StatusScan extends RecursiveAction {
+
+    /** @return The finished scan of the working files PATHS against the
+     *  files TRACKED by the head commit and those staged
+     *  @param paths Sorted paths of every working file
+     *  @param changed Paths that may have changed since every file was
+     *  last checked, or null to check every file
+     *  @param tracked Blob ids of the files of the head commit, by path
+     *  @param staged Blob ids of files staged for addition, by path
+     *  @param removed Paths of files staged for removal
+     */
+    static StatusScan run(List<String> paths, Set<String> changed,
+                          Map<String, String> tracked,
+                          Map<String, String> staged, Set<String> removed) {
+        StatusScan scan = new StatusScan(paths, changed, tracked, staged,
+                removed);
+        ForkJoinPool.commonPool().invoke(scan);
+        return scan;
+    }
+
+    /** Creates the scan of all of PATHS, not yet run.
+     *  @param paths Sorted paths of the working tree
+     *  @param changed Paths that may have changed, or null
+     *  @param tracked Blob ids of the files of the head commit, by path
+     *  @param staged Blob ids of files staged for addition, by path
+     *  @param removed Paths of files staged for removal
+     */
+    private StatusScan(List<String> paths, Set<String> changed,
+                       Map<String, String> tracked,
+                       Map<String, String> staged, Set<String> removed) {
+        _paths = paths;
+        _changed = changed;
+        _tracked = tracked;
+        _staged = staged;
+        _removed = removed;
+        _kinds = new byte[paths.size()];
+        _lo = 0;
+        _hi = paths.size();
+    }
+
+    /** Creates the part of scan WHOLE covering paths LO to HI.
+     *  @param whole Scan this is part of
+     *  @param lo Index of the first path
+     *  @param hi Index just past the last path
+     */
+    private StatusScan(StatusScan whole, int lo, int hi) {
+        _paths = whole._paths;
+        _changed = whole._changed;
+        _tracked = whole._tracked;
+        _staged = whole._staged;
+        _removed = whole._removed;
+        _kinds = whole._kinds;
+        _lo = lo;
+        _hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+        if (_hi - _lo > SPLIT) {
+            int mid = (_lo + _hi) >>> 1;
+            invokeAll(new StatusScan(this, _lo, mid),
+                    new StatusScan(this, mid, _hi));
+            return;
+        }
+        for (int i = _lo; i < _hi; i += 1) {
+            String path = _paths.get(i);
+            String blobID = _tracked.get(path);
+            if (blobID == null) {
+                if (!_staged.containsKey(path) || _removed.contains(path)) {
+                    _kinds[i] = UNTRACKED;
+                }
+            } else {
+                String current = null;
+                if (_changed != null && !changed(path)) {
+                    current = Repository.STATS.known(path);
+                }
+                if (current == null) {
+                    current = Repository.STATS.uid(path,
+                            Utils.join(Repository.CWD, path));
+                }
+                if (!blobID.equals(current)) {
+                    _kinds[i] = MODIFIED;
+                }
+            }
+        }
+    }
+
+    /** @return Whether PATH, or a directory it is in, may have changed
+     *  @param path Path of a working file
+     */
+    private boolean changed(String path) {
+        for (int end = path.length(); end > 0;
+             end = path.lastIndexOf('/', end - 1)) {
+            if (_changed.contains(path.substring(0, end))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return Sorted entries of the "Modifications Not Staged For
+     *  Commit" section: each tracked file changed in the working tree,
+     *  and each deleted from it without being staged for removal */
+    List<String> modifications() {
+        ArrayList<String> result = new ArrayList<>();
+        ArrayList<String> deleted = new ArrayList<>();
+        for (String path : _tracked.keySet()) {
+            if (!_removed.contains(path)
+                    && Collections.binarySearch(_paths, path) < 0) {
+                deleted.add(path);
+            }
+        }
+        deleted.sort(null);
+        int d = 0;
+        for (int i = 0; i < _kinds.length; i += 1) {
+            if (_kinds[i] != MODIFIED) {
+                continue;
+            }
+            String path = _paths.get(i);
+            for (; d < deleted.size() && deleted.get(d).compareTo(path) < 0;
+                 d += 1) {
+                result.add(deleted.get(d) + " (deleted)");
+            }
+            result.add(path + " (modified)");
+        }
+        for (; d < deleted.size(); d += 1) {
+            result.add(deleted.get(d) + " (deleted)");
+        }
+        return result;
+    }
+
+    /** @return Sorted paths of the untracked files */
+    List<String> untracked() {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < _kinds.length; i += 1) {
+            if (_kinds[i] == UNTRACKED) {
+                result.add(_paths.get(i));
+            }
+        }
+        return result;
+    }
+
+    /** Most paths classified by one task. */
+    private static final int SPLIT = 256;
+
+    /** Kind of a tracked file whose contents have changed. */
+    private static final byte MODIFIED = 1;
+
+    /** Kind of a file that is neither tracked nor staged. */
+    private static final byte UNTRACKED = 2;
+
+    /** Sorted paths of the working tree. */
+    private final List<String> _paths;
+
+    /** Paths that may have changed, or null if every file may have. */
+    private final Set<String> _changed;
+
+    /** Blob ids of the files of the head commit, by path. */
+    private final Map<String, String> _tracked;
+
+    /** Blob ids of files staged for addition, by path. */
+    private final Map<String, String> _staged;
+
+    /** Paths of files staged for removal. */
+    private final Set<String> _removed;
+
+    /** Kind of each path, by index in _paths, shared by all parts; 0
+     *  for a tracked, unchanged file or one staged for addition. */
+    private final byte[] _kinds;
+
+    /** Index of the first path this part classifies. */
+    private final int _lo;
+
+    /** Index just past the last path this part classifies. */
+    private final int _hi;
+}
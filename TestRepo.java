@@ -0,0 +1,55 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** A fresh repository for the JUnit tests, made in the current
+ *  directory.  Since the repository's stores are static and rooted at
+ *  the directory the JVM started in, tests that use them must run in a
+ *  scratch directory; UnitTest.main makes one.
+ *  @author Ishil Puri
+ */
+class TestRepo {
+
+    /** @return A repository just initialized in the current directory,
+     *  after deleting everything else there and dropping whatever the
+     *  stores cached of it */
+    static Repository create() throws IOException {
+        File root = Repository.CWD;
+        if (!new File(root, MARKER).isFile()) {
+            throw new IllegalStateException("Unit tests delete the contents"
+                    + " of the directory they run in; run them through"
+                    + " UnitTest.main, or in a scratch directory holding a"
+                    + " file named " + MARKER + ".");
+        }
+        try (Stream<Path> all = Files.walk(root.toPath())) {
+            all.sorted(Comparator.reverseOrder())
+                    .filter(p -> !p.equals(root.toPath())
+                            && !p.getFileName().toString().equals(MARKER))
+                    .forEach(p -> p.toFile().delete());
+        }
+        Repository.reload();
+        Repository.COMMITS.clear();
+        Repository repo = new Repository();
+        repo.init();
+        return repo;
+    }
+
+    /** Writes CONTENTS to the working file at PATH, making its
+     *  directories.
+     *  @param path Path of the file, with '/' between directories
+     *  @param contents Text written
+     */
+    static void write(String path, String contents) {
+        File f = Utils.join(Repository.CWD, path);
+        f.getParentFile().mkdirs();
+        Utils.writeContents(f, contents);
+    }
+
+    /** Name of the file marking a directory tests may wipe. */
+    static final String MARKER = ".gitlet-test";
+}
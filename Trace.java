@@ -0,0 +1,262 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Wall time of the phases of the running command, and counts of the
+ *  work it does, for finding where a slow command spends its time.
+ *
+ *  Main starts a trace before each command and finishes it afterwards.
+ *  In between, code marks its phases with phase, in a try-with-resources
+ *  statement, and counts work with count, which may be called from any
+ *  thread.  A phase entered more than once is reported as the sum of its
+ *  times.  Every command is also recorded as a JFR event named
+ *  gitlet.Command carrying the counts, and every phase as a
+ *  gitlet.Phase event, so a recording made with -XX:StartFlightRecording
+ *  shows them beside the JVM's own events.  Given --trace, Main prints a
+ *  summary to standard error once the command is done.
+ *  @author Ishil Puri
+ */
+class Trace {
+
+    /** Kinds of work counted. */
+    enum Counter {
+        /** Commits decoded from their stored form. */
+        COMMITS_READ("commits deserialized"),
+        /** Commit lookups answered from the commit cache. */
+        COMMIT_CACHE_HITS("commit cache hits"),
+        /** Commit lookups that went to the object store. */
+        COMMIT_CACHE_MISSES("commit cache misses"),
+        /** Bytes of blobs read from the object store. */
+        BLOB_BYTES_READ("blob bytes read"),
+        /** Bytes of blobs written to the object store. */
+        BLOB_BYTES_WRITTEN("blob bytes written"),
+        /** Bytes read by Utils.readContents. */
+        FILE_BYTES_READ("file bytes read"),
+        /** Bytes written by Utils.writeContents. */
+        FILE_BYTES_WRITTEN("file bytes written"),
+        /** Files whose contents were hashed. */
+        FILES_HASHED("files hashed"),
+        /** Directories listed. */
+        DIRS_LISTED("directory listings");
+
+        /** Creates a counter described by LABEL.
+         *  @param label Description used in summaries
+         */
+        Counter(String label) {
+            _label = label;
+        }
+
+        /** Description used in summaries. */
+        private final String _label;
+
+        /** Total counted in the current command. */
+        private final LongAdder _total = new LongAdder();
+    }
+
+    /** Forgets everything counted and starts timing COMMAND.
+     *  @param command Name of the command
+     */
+    static void start(String command) {
+        for (Counter c : Counter.values()) {
+            c._total.reset();
+        }
+        synchronized (PHASES) {
+            PHASES.clear();
+        }
+        _command = command;
+        _event = new CommandEvent();
+        _event.begin();
+        _start = System.nanoTime();
+    }
+
+    /** Adds N to counter C.
+     *  @param c Counter
+     *  @param n Amount of work
+     */
+    static void count(Counter c, long n) {
+        c._total.add(n);
+    }
+
+    /** @return The phase named NAME, started now and ended by closing it
+     *  @param name Name of the phase
+     */
+    static Span phase(String name) {
+        return new Span(name);
+    }
+
+    /** Ends the command being traced, recording its JFR event, and
+     *  prints a summary of it to standard error if PRINT.
+     *  @param print Whether to print the summary
+     */
+    static void finish(boolean print) {
+        long elapsed = System.nanoTime() - _start;
+        CommandEvent e = _event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.command = _command;
+            e.commitsRead = total(Counter.COMMITS_READ);
+            e.commitCacheHits = total(Counter.COMMIT_CACHE_HITS);
+            e.commitCacheMisses = total(Counter.COMMIT_CACHE_MISSES);
+            e.blobBytesRead = total(Counter.BLOB_BYTES_READ);
+            e.blobBytesWritten = total(Counter.BLOB_BYTES_WRITTEN);
+            e.fileBytesRead = total(Counter.FILE_BYTES_READ);
+            e.fileBytesWritten = total(Counter.FILE_BYTES_WRITTEN);
+            e.filesHashed = total(Counter.FILES_HASHED);
+            e.dirsListed = total(Counter.DIRS_LISTED);
+            e.commit();
+        }
+        if (print) {
+            summarize(System.err, elapsed);
+        }
+    }
+
+    /** @return Total of counter C in the current command
+     *  @param c Counter
+     */
+    static long total(Counter c) {
+        return c._total.sum();
+    }
+
+    /** Prints the time of the command, of each of its phases and the
+     *  counts of its work on OUT.
+     *  @param out Stream to print on
+     *  @param elapsed Nanoseconds the command took
+     */
+    private static void summarize(PrintStream out, long elapsed) {
+        out.printf("--- trace: %s, %.2f ms%n", _command, elapsed / 1e6);
+        synchronized (PHASES) {
+            for (Map.Entry<String, long[]> p : PHASES.entrySet()) {
+                long[] v = p.getValue();
+                out.printf("  %-24s %10.2f ms%s%n", p.getKey(), v[0] / 1e6,
+                        v[1] > 1 ? " (" + v[1] + " times)" : "");
+            }
+        }
+        for (Counter c : Counter.values()) {
+            out.printf("  %-24s %10d%n", c._label, total(c));
+        }
+    }
+
+    /** A phase of a command, timed from its creation until it is
+     *  closed. */
+    static final class Span implements AutoCloseable {
+        /** Starts phase NAME.
+         *  @param name Name of the phase
+         */
+        private Span(String name) {
+            _name = name;
+            _event = new PhaseEvent();
+            _event.begin();
+            _begun = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            long elapsed = System.nanoTime() - _begun;
+            synchronized (PHASES) {
+                long[] v = PHASES.computeIfAbsent(_name, k -> new long[2]);
+                v[0] += elapsed;
+                v[1] += 1;
+            }
+            _event.end();
+            if (_event.shouldCommit()) {
+                _event.command = _command;
+                _event.phase = _name;
+                _event.commit();
+            }
+        }
+
+        /** Name of the phase. */
+        private final String _name;
+
+        /** JFR event of the phase. */
+        private final PhaseEvent _event;
+
+        /** Value of System.nanoTime when the phase began. */
+        private final long _begun;
+    }
+
+    /** JFR event of one command. */
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    @StackTrace(false)
+    static final class CommandEvent extends Event {
+        /** Name of the command. */
+        @Label("Command")
+        String command;
+
+        /** Commits decoded. */
+        @Label("Commits Deserialized")
+        long commitsRead;
+
+        /** Commit lookups answered from the commit cache. */
+        @Label("Commit Cache Hits")
+        long commitCacheHits;
+
+        /** Commit lookups that went to the object store. */
+        @Label("Commit Cache Misses")
+        long commitCacheMisses;
+
+        /** Bytes of blobs read from the object store. */
+        @Label("Blob Bytes Read")
+        long blobBytesRead;
+
+        /** Bytes of blobs written to the object store. */
+        @Label("Blob Bytes Written")
+        long blobBytesWritten;
+
+        /** Bytes read by Utils.readContents. */
+        @Label("File Bytes Read")
+        long fileBytesRead;
+
+        /** Bytes written by Utils.writeContents. */
+        @Label("File Bytes Written")
+        long fileBytesWritten;
+
+        /** Files hashed. */
+        @Label("Files Hashed")
+        long filesHashed;
+
+        /** Directories listed. */
+        @Label("Directory Listings")
+        long dirsListed;
+    }
+
+    /** JFR event of one phase of a command. */
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        /** Name of the command. */
+        @Label("Command")
+        String command;
+
+        /** Name of the phase. */
+        @Label("Phase")
+        String phase;
+    }
+
+    /** Total time and number of runs of each phase of the current
+     *  command, in the order they were first entered. */
+    private static final LinkedHashMap<String, long[]> PHASES =
+            new LinkedHashMap<>();
+
+    /** Name of the current command. */
+    private static String _command = "";
+
+    /** JFR event of the current command. */
+    private static CommandEvent _event = new CommandEvent();
+
+    /** Value of System.nanoTime when the current command started. */
+    private static long _start = System.nanoTime();
+}
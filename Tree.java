@@ -0,0 +1,491 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** Content-addressed listing of one directory of a commit.
+ *
+ *  A tree maps each name in its directory to the id of a blob, or of
+ *  the tree of a subdirectory.  A directory of at most LISTING names is
+ *  stored as a single listing:
+ *      [magic:4][count:4] followed by count entries of
+ *      [kind:1][name length:2][UTF-8 name][id:20], sorted by name.
+ *  A larger directory is stored as a persistent hash-array-mapped trie:
+ *  a split node sends each name to one of FANOUT children by the next
+ *  few bits of the name's hash,
+ *      [magic:4][count:4][bitmap:4] followed by [count:4][id:20] for
+ *      each child present in the bitmap,
+ *  and each child is in turn a listing or a split node holding only the
+ *  names sent to it.  The shape depends only on the names, so equal
+ *  directories always have equal ids.  Every node's id is the sha1 of
+ *  its stored form, so a commit shares every node of its parent's trees
+ *  that it did not change, and changing one file writes only the nodes
+ *  on the path to it, none of which holds more than LISTING entries
+ *  or FANOUT children.  Paths handed to and returned from this class use
+ *  '/' between directory names.
+ *  @author Ishil Puri
+ */
+class Tree {
+
+    /** Creates an empty listing. */
+    private Tree() {
+        _entries = new TreeMap<>();
+    }
+
+    /** @return Id of the tree that is the tree with id BASE with CHANGES
+     *  applied, writing only the nodes that differ from those of BASE
+     *  @param base Id of the tree changed, or null for an empty tree
+     *  @param changes New blob id of each changed path, or null for each
+     *  path no longer tracked
+     */
+    static String update(String base, SortedMap<String, String> changes) {
+        String id = apply(base, changes);
+        return id == null ? new Tree().write() : id;
+    }
+
+    /** @return Id of a tree of every path in TRACKING
+     *  @param tracking Blob ids of files, by path
+     */
+    static String build(Map<String, String> tracking) {
+        return update(null, new TreeMap<>(tracking));
+    }
+
+    /** @return Blob id of the file at PATH under the tree with id ID, or
+     *  null if there is none, reading only the nodes along PATH
+     *  @param id Tree id
+     *  @param path Path of the file
+     */
+    static String lookup(String id, String path) {
+        int slash;
+        while ((slash = path.indexOf('/')) >= 0) {
+            Entry e = find(id, path.substring(0, slash));
+            if (e == null || !e._dir) {
+                return null;
+            }
+            id = e._id;
+            path = path.substring(slash + 1);
+        }
+        Entry e = find(id, path);
+        return e == null || e._dir ? null : e._id;
+    }
+
+    /** Adds the blob ids of every file under the tree with id ID to
+     *  INTO, each under PREFIX followed by its path in the tree.
+     *  @param id Tree id
+     *  @param prefix Path of the tree's directory, ending in '/', or ""
+     *  @param into Map of paths to blob ids being filled
+     */
+    static void flatten(String id, String prefix, Map<String, String> into) {
+        for (Map.Entry<String, Entry> e : entries(read(id)).entrySet()) {
+            Entry v = e.getValue();
+            if (v._dir) {
+                flatten(v._id, prefix + e.getKey() + "/", into);
+            } else {
+                into.put(prefix + e.getKey(), v._id);
+            }
+        }
+    }
+
+    /** Adds to INTO the path of every file whose blob differs between
+     *  the trees with ids A and B, including files only one of them has.
+     *  Nodes with equal ids are skipped without being read.
+     *  @param a Tree id, or null for an empty tree
+     *  @param b Tree id, or null for an empty tree
+     *  @param prefix Path of the trees' directory, ending in '/', or ""
+     *  @param into Set of paths being filled
+     */
+    static void diff(String a, String b, String prefix, Set<String> into) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        Tree ta = a == null ? null : read(a), tb = b == null ? null : read(b);
+        if (ta != null && tb != null && ta._entries == null
+                && tb._entries == null) {
+            for (int slot = 0; slot < FANOUT; slot += 1) {
+                diff(ta.child(slot), tb.child(slot), prefix, into);
+            }
+            return;
+        }
+        TreeMap<String, Entry> ea = ta == null ? EMPTY : entries(ta);
+        TreeMap<String, Entry> eb = tb == null ? EMPTY : entries(tb);
+        TreeMap<String, Boolean> names = new TreeMap<>();
+        for (String name : ea.keySet()) {
+            names.put(name, true);
+        }
+        for (String name : eb.keySet()) {
+            names.put(name, true);
+        }
+        for (String name : names.keySet()) {
+            Entry x = ea.get(name), y = eb.get(name);
+            if (x != null && y != null && x._dir == y._dir
+                    && x._id.equals(y._id)) {
+                continue;
+            }
+            String path = prefix + name;
+            if (x != null && !x._dir || y != null && !y._dir) {
+                into.add(path);
+            }
+            String sa = x != null && x._dir ? x._id : null;
+            String sb = y != null && y._dir ? y._id : null;
+            if (sa != null || sb != null) {
+                diff(sa, sb, path + "/", into);
+            }
+        }
+    }
+
+    /** @return Id of the tree with id BASE with CHANGES applied, or null
+     *  if it is left empty
+     *  @param base Tree id, or null for an empty tree
+     *  @param changes New blob ids of changed paths relative to this tree,
+     *  null for removed paths
+     */
+    private static String apply(String base, SortedMap<String, String> changes) {
+        TreeMap<String, Entry> edits = new TreeMap<>();
+        TreeMap<String, TreeMap<String, String>> subdirs = new TreeMap<>();
+        for (Map.Entry<String, String> c : changes.entrySet()) {
+            String path = c.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                edits.put(path, c.getValue() == null ? REMOVED
+                        : new Entry(false, c.getValue()));
+            } else {
+                subdirs.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), c.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> d
+                 : subdirs.entrySet()) {
+            Entry old = base == null ? null : find(base, d.getKey());
+            String sub = apply(old != null && old._dir ? old._id : null,
+                    d.getValue());
+            if (sub != null) {
+                edits.put(d.getKey(), new Entry(true, sub));
+            } else if (!edits.containsKey(d.getKey())) {
+                edits.put(d.getKey(), REMOVED);
+            }
+        }
+        Node result = edit(base, 0, edits);
+        return result == null ? null : result._id;
+    }
+
+    /** @return The node that is the node with id ID, LEVEL splits below
+     *  the top of its directory, with EDITS applied, or null if it is
+     *  left empty.  Only children that EDITS reaches are rewritten.
+     *  @param id Node id, or null for an empty node
+     *  @param level Number of split nodes above this one
+     *  @param edits New entry for each changed name, REMOVED for names
+     *  no longer listed
+     */
+    private static Node edit(String id, int level,
+                             SortedMap<String, Entry> edits) {
+        Tree t = id == null ? new Tree() : read(id);
+        if (t._entries != null) {
+            for (Map.Entry<String, Entry> e : edits.entrySet()) {
+                if (e.getValue() == REMOVED) {
+                    t._entries.remove(e.getKey());
+                } else {
+                    t._entries.put(e.getKey(), e.getValue());
+                }
+            }
+            return store(t._entries, level);
+        }
+        TreeMap<Integer, TreeMap<String, Entry>> bySlot = new TreeMap<>();
+        for (Map.Entry<String, Entry> e : edits.entrySet()) {
+            bySlot.computeIfAbsent(slot(e.getKey(), level),
+                    k -> new TreeMap<>()).put(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<Integer, TreeMap<String, Entry>> s : bySlot.entrySet()) {
+            int slot = s.getKey();
+            Node child = edit(t.child(slot), level + 1, s.getValue());
+            t._children[slot] = child == null ? null : child._id;
+            t._counts[slot] = child == null ? 0 : child._count;
+        }
+        int count = t.count();
+        if (count <= LISTING) {
+            TreeMap<String, Entry> all = new TreeMap<>();
+            for (int slot = 0; slot < FANOUT; slot += 1) {
+                if (t._children[slot] != null) {
+                    all.putAll(entries(read(t._children[slot])));
+                }
+            }
+            return store(all, level);
+        }
+        return new Node(t.write(), count);
+    }
+
+    /** @return The node holding exactly ENTRIES, LEVEL splits below the
+     *  top of its directory, writing it and any children it needs, or
+     *  null if ENTRIES is empty
+     *  @param entries Entries of the node, by name
+     *  @param level Number of split nodes above this one
+     */
+    private static Node store(TreeMap<String, Entry> entries, int level) {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Tree t = new Tree();
+        if (entries.size() <= LISTING || level >= MAX_LEVEL) {
+            t._entries.putAll(entries);
+            return new Node(t.write(), entries.size());
+        }
+        t.split();
+        TreeMap<Integer, TreeMap<String, Entry>> bySlot = new TreeMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            bySlot.computeIfAbsent(slot(e.getKey(), level),
+                    k -> new TreeMap<>()).put(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<Integer, TreeMap<String, Entry>> s : bySlot.entrySet()) {
+            Node child = store(s.getValue(), level + 1);
+            t._children[s.getKey()] = child._id;
+            t._counts[s.getKey()] = child._count;
+        }
+        return new Node(t.write(), entries.size());
+    }
+
+    /** @return Entry for NAME in the directory whose tree has id ID, or
+     *  null, reading only the nodes NAME hashes to
+     *  @param id Tree id
+     *  @param name Name in the directory
+     */
+    private static Entry find(String id, String name) {
+        for (int level = 0; id != null; level += 1) {
+            Tree t = read(id);
+            if (t._entries != null) {
+                return t._entries.get(name);
+            }
+            id = t.child(slot(name, level));
+        }
+        return null;
+    }
+
+    /** @return Every entry of the directory under node T, by name
+     *  @param t Listing or split node
+     */
+    private static TreeMap<String, Entry> entries(Tree t) {
+        if (t._entries != null) {
+            return t._entries;
+        }
+        TreeMap<String, Entry> all = new TreeMap<>();
+        for (int slot = 0; slot < FANOUT; slot += 1) {
+            if (t._children[slot] != null) {
+                all.putAll(entries(read(t._children[slot])));
+            }
+        }
+        return all;
+    }
+
+    /** @return Child of a split node that names hashing to SLOT go to,
+     *  or null if there is none
+     *  @param slot Child number
+     */
+    private String child(int slot) {
+        return _children == null ? null : _children[slot];
+    }
+
+    /** Turns this empty listing into an empty split node. */
+    private void split() {
+        _entries = null;
+        _children = new String[FANOUT];
+        _counts = new int[FANOUT];
+    }
+
+    /** @return Number of entries under this node */
+    private int count() {
+        if (_entries != null) {
+            return _entries.size();
+        }
+        int count = 0;
+        for (int n : _counts) {
+            count += n;
+        }
+        return count;
+    }
+
+    /** @return Child of a split node, LEVEL splits below the top of its
+     *  directory, that NAME goes to
+     *  @param name Name in the directory
+     *  @param level Number of split nodes above
+     */
+    private static int slot(String name, int level) {
+        int h = name.hashCode();
+        h ^= h >>> 16;
+        h *= MIX1;
+        h ^= h >>> 13;
+        h *= MIX2;
+        h ^= h >>> 16;
+        return (h >>> (level * BITS)) & (FANOUT - 1);
+    }
+
+    /** @return Node with id ID read from storage
+     *  @param id Node id
+     */
+    private static Tree read(String id) {
+        byte[] data = Repository.OBJECTS.read(id, ObjectStore.TREE);
+        if (data == null) {
+            throw Utils.error("No tree with that id exists.");
+        }
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int magic = in.getInt();
+        Tree t = new Tree();
+        byte[] raw = new byte[ID_BYTES];
+        if (magic == SPLIT_MAGIC) {
+            t.split();
+            in.getInt();
+            int bitmap = in.getInt();
+            for (int slot = 0; slot < FANOUT; slot += 1) {
+                if ((bitmap & (1 << slot)) != 0) {
+                    t._counts[slot] = in.getInt();
+                    in.get(raw);
+                    t._children[slot] = Utils.bytesToUid(raw, 0);
+                }
+            }
+            return t;
+        } else if (magic != MAGIC) {
+            throw Utils.error("Corrupt tree %s.", id);
+        }
+        for (int n = in.getInt(); n > 0; n -= 1) {
+            boolean dir = in.get() == DIR;
+            int length = in.getShort() & 0xffff;
+            String name = new String(data, in.position(), length,
+                    StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            in.get(raw);
+            t._entries.put(name, new Entry(dir, Utils.bytesToUid(raw, 0)));
+        }
+        return t;
+    }
+
+    /** Stores this node, unless it is already stored.
+     *  @return Its id
+     */
+    private String write() {
+        ByteBuffer out;
+        if (_entries == null) {
+            int bitmap = 0, present = 0;
+            for (int slot = 0; slot < FANOUT; slot += 1) {
+                if (_children[slot] != null) {
+                    bitmap |= 1 << slot;
+                    present += 1;
+                }
+            }
+            out = ByteBuffer.allocate(HEADER + 4 + present * (4 + ID_BYTES));
+            out.putInt(SPLIT_MAGIC).putInt(count()).putInt(bitmap);
+            for (int slot = 0; slot < FANOUT; slot += 1) {
+                if (_children[slot] != null) {
+                    out.putInt(_counts[slot])
+                            .put(Utils.uidToBytes(_children[slot]));
+                }
+            }
+        } else {
+            int size = HEADER;
+            TreeMap<String, byte[]> names = new TreeMap<>();
+            for (String name : _entries.keySet()) {
+                byte[] raw = name.getBytes(StandardCharsets.UTF_8);
+                names.put(name, raw);
+                size += 3 + raw.length + ID_BYTES;
+            }
+            out = ByteBuffer.allocate(size);
+            out.putInt(MAGIC).putInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                byte[] raw = names.get(e.getKey());
+                out.put(e.getValue()._dir ? DIR : FILE)
+                        .putShort((short) raw.length).put(raw)
+                        .put(Utils.uidToBytes(e.getValue()._id));
+            }
+        }
+        byte[] data = out.array();
+        String id = Utils.sha1(data);
+        Repository.OBJECTS.write(id, ObjectStore.TREE, data);
+        return id;
+    }
+
+    /** One name in a tree. */
+    private static final class Entry {
+        /** Creates an entry.
+         * @param dir Whether it names a subdirectory
+         * @param id Sha1 id of its blob or tree
+         */
+        Entry(boolean dir, String id) {
+            _dir = dir;
+            _id = id;
+        }
+
+        /** Whether it names a subdirectory. */
+        private final boolean _dir;
+
+        /** Sha1 id of its blob or tree. */
+        private final String _id;
+    }
+
+    /** A stored node and the number of entries under it. */
+    private static final class Node {
+        /** Creates a reference to node ID.
+         * @param id Sha1 id of the node
+         * @param count Number of entries under it
+         */
+        Node(String id, int count) {
+            _id = id;
+            _count = count;
+        }
+
+        /** Sha1 id of the node. */
+        private final String _id;
+
+        /** Number of entries under it. */
+        private final int _count;
+    }
+
+    /** Magic number at the start of a stored listing ("GTRE"). */
+    private static final int MAGIC = 0x47545245;
+
+    /** Magic number at the start of a stored split node ("GTRS"). */
+    private static final int SPLIT_MAGIC = 0x47545253;
+
+    /** Bytes in the node header. */
+    private static final int HEADER = 8;
+
+    /** Bytes in a raw sha1 id. */
+    private static final int ID_BYTES = 20;
+
+    /** Kind of an entry naming a file. */
+    private static final byte FILE = 0;
+
+    /** Kind of an entry naming a subdirectory. */
+    private static final byte DIR = 1;
+
+    /** Most entries a directory, or part of one, is stored as a single
+     *  listing with. */
+    private static final int LISTING = 64;
+
+    /** Bits of a name's hash used by each split. */
+    private static final int BITS = 5;
+
+    /** Children of a split node. */
+    private static final int FANOUT = 1 << BITS;
+
+    /** Deepest split, past which the hash has no bits left. */
+    private static final int MAX_LEVEL = 32 / BITS;
+
+    /** Multipliers scrambling the bits of a name's hash code. */
+    private static final int MIX1 = 0x85ebca6b, MIX2 = 0xc2b2ae35;
+
+    /** Edit standing for a name being removed. */
+    private static final Entry REMOVED = new Entry(false, null);
+
+    /** Entries of a tree that does not exist. */
+    private static final TreeMap<String, Entry> EMPTY = new TreeMap<>();
+
+    /** Entries of a listing, by name, or null for a split node. */
+    private TreeMap<String, Entry> _entries;
+
+    /** Ids of a split node's children, by slot, null where absent. */
+    private String[] _children;
+
+    /** Number of entries under each child of a split node. */
+    private int[] _counts;
+}
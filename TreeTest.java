@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the trees commits store their files in.
+ *  @author Ishil Puri
+ */
+public class TreeTest {
+
+    /** Starts each test in an empty repository. */
+    @Before
+    public void setUp() throws IOException {
+        _repo = TestRepo.create();
+    }
+
+    /** Files are found by path, and only under the paths they have. */
+    @Test
+    public void lookup() {
+        TreeMap<String, String> files = new TreeMap<>();
+        files.put("top", BLOB1);
+        files.put("a/b/deep", BLOB2);
+        files.put("a/side", BLOB1);
+        String id = Tree.build(files);
+        assertEquals(BLOB1, Tree.lookup(id, "top"));
+        assertEquals(BLOB2, Tree.lookup(id, "a/b/deep"));
+        assertEquals(BLOB1, Tree.lookup(id, "a/side"));
+        assertNull(Tree.lookup(id, "a"));
+        assertNull(Tree.lookup(id, "a/b"));
+        assertNull(Tree.lookup(id, "top/deep"));
+        assertNull(Tree.lookup(id, "missing"));
+        TreeMap<String, String> all = new TreeMap<>();
+        Tree.flatten(id, "", all);
+        assertEquals(files, all);
+    }
+
+    /** Applying changes gives the tree built from scratch, whose id
+     *  depends only on the files, and leaves the old tree as it was. */
+    @Test
+    public void apply() {
+        TreeMap<String, String> files = new TreeMap<>();
+        files.put("a/x", BLOB1);
+        files.put("a/y", BLOB1);
+        files.put("b/z", BLOB1);
+        String old = Tree.build(files);
+        TreeMap<String, String> changes = new TreeMap<>();
+        changes.put("a/x", BLOB2);
+        changes.put("b/z", null);
+        changes.put("c/w", BLOB2);
+        String id = Tree.update(old, changes);
+        TreeMap<String, String> expected = new TreeMap<>();
+        expected.put("a/x", BLOB2);
+        expected.put("a/y", BLOB1);
+        expected.put("c/w", BLOB2);
+        assertEquals(Tree.build(expected), id);
+        assertNull(Tree.lookup(id, "b/z"));
+        TreeMap<String, String> before = new TreeMap<>();
+        Tree.flatten(old, "", before);
+        assertEquals(files, before);
+        TreeMap<String, String> none = new TreeMap<>();
+        none.put("a/x", null);
+        none.put("a/y", null);
+        none.put("b/z", null);
+        assertEquals(Tree.build(new TreeMap<>()), Tree.update(old, none));
+    }
+
+    /** Diff finds exactly the files whose blobs differ, at any depth. */
+    @Test
+    public void diff() {
+        TreeMap<String, String> files = new TreeMap<>();
+        files.put("same", BLOB1);
+        files.put("d/changed", BLOB1);
+        files.put("d/e/gone", BLOB1);
+        files.put("d/e/kept", BLOB1);
+        files.put("f/g", BLOB1);
+        String a = Tree.build(files);
+        TreeMap<String, String> changes = new TreeMap<>();
+        changes.put("d/changed", BLOB2);
+        changes.put("d/e/gone", null);
+        changes.put("d/e/new", BLOB2);
+        changes.put("f/g", null);
+        changes.put("f", BLOB2);
+        String b = Tree.update(a, changes);
+        TreeSet<String> changed = new TreeSet<>();
+        Tree.diff(a, b, "", changed);
+        assertEquals(changes.keySet(), changed);
+        changed.clear();
+        Tree.diff(b, a, "", changed);
+        assertEquals(changes.keySet(), changed);
+        changed.clear();
+        Tree.diff(a, a, "", changed);
+        assertTrue(changed.isEmpty());
+        Tree.diff(null, a, "", changed);
+        assertEquals(files.keySet(), changed);
+    }
+
+    /** A directory too large for one listing is split, and collapses
+     *  back into a listing as files are removed, each time into the
+     *  same tree as one built from scratch. */
+    @Test
+    public void splitAndCollapse() {
+        TreeMap<String, String> small = new TreeMap<>();
+        TreeMap<String, String> large = new TreeMap<>();
+        for (int i = 0; i < MANY; i += 1) {
+            String path = "dir/file" + i;
+            large.put(path, Utils.sha1(path));
+            if (i < FEW) {
+                small.put(path, Utils.sha1(path));
+            }
+        }
+        String listing = Tree.build(small);
+        TreeMap<String, String> grow = new TreeMap<>(large);
+        grow.keySet().removeAll(small.keySet());
+        String split = Tree.update(listing, grow);
+        assertEquals(Tree.build(large), split);
+        String dir = dirId(split);
+        assertEquals("GTRS", new String(Repository.OBJECTS.read(dir,
+                ObjectStore.TREE), 0, 4, StandardCharsets.US_ASCII));
+        for (String path : large.keySet()) {
+            assertEquals(large.get(path), Tree.lookup(split, path));
+        }
+        TreeMap<String, String> all = new TreeMap<>();
+        Tree.flatten(split, "", all);
+        assertEquals(large, all);
+        TreeMap<String, String> shrink = new TreeMap<>();
+        for (String path : grow.keySet()) {
+            shrink.put(path, null);
+        }
+        String collapsed = Tree.update(split, shrink);
+        assertEquals(listing, collapsed);
+        assertEquals("GTRE", new String(Repository.OBJECTS.read(
+                dirId(collapsed), ObjectStore.TREE), 0, 4,
+                StandardCharsets.US_ASCII));
+        TreeSet<String> changed = new TreeSet<>();
+        Tree.diff(listing, split, "", changed);
+        assertEquals(grow.keySet(), changed);
+    }
+
+    /** A file replacing a directory of the same name is kept. */
+    @Test
+    public void fileReplacesDirectory() {
+        String dir = Tree.build(map("a/b", BLOB1));
+        TreeMap<String, String> changes = new TreeMap<>();
+        changes.put("a/b", null);
+        changes.put("a", BLOB2);
+        String file = Tree.update(dir, changes);
+        assertEquals(BLOB2, Tree.lookup(file, "a"));
+        assertNull(Tree.lookup(file, "a/b"));
+        TreeMap<String, String> all = new TreeMap<>();
+        Tree.flatten(file, "", all);
+        assertEquals(map("a", BLOB2), all);
+    }
+
+    /** Committing a file where a committed directory was tracks it. */
+    @Test
+    public void commitFileOverDirectory() throws IOException {
+        TestRepo.write("a/b", "b\n");
+        _repo.add("a/b");
+        _repo.commit("directory");
+        _repo.rm("a/b");
+        Utils.join(Repository.CWD, "a").delete();
+        TestRepo.write("a", "a\n");
+        _repo.add("a");
+        _repo.commit("file");
+        Repository.COMMITS.clear();
+        Commit head = Commit.read(_repo.getHEAD());
+        assertEquals(Utils.sha1Contents(Utils.join(Repository.CWD, "a")),
+                head.getBlob("a"));
+        assertNull(head.getBlob("a/b"));
+    }
+
+    /** @return Id of the tree of directory "dir" in the tree with id
+     *  ROOT
+     *  @param root Id of a tree holding just that directory
+     */
+    private static String dirId(String root) {
+        byte[] data = Repository.OBJECTS.read(root, ObjectStore.TREE);
+        return Utils.bytesToUid(data, data.length - Utils.UID_LENGTH / 2);
+    }
+
+    /** @return A map of PATH to ID.
+     *  @param path Path of a file
+     *  @param id Its blob id
+     */
+    private static TreeMap<String, String> map(String path, String id) {
+        TreeMap<String, String> result = new TreeMap<>();
+        result.put(path, id);
+        return result;
+    }
+
+    /** A blob id. */
+    private static final String BLOB1 = Utils.sha1("one");
+
+    /** Another blob id. */
+    private static final String BLOB2 = Utils.sha1("two");
+
+    /** Files in a directory that needs several levels of split nodes. */
+    private static final int MANY = 5000;
+
+    /** Files in a directory that fits in one listing. */
+    private static final int FEW = 40;
+
+    /** Repository each test runs in. */
+    private Repository _repo;
+}
@@ -0,0 +1,202 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/** Differences between two versions of a set of files, printed in
+ *  unified format.
+ *
+ *  Each file's differences are found by Diff and written hunk by hunk,
+ *  each hunk with up to CONTEXT unchanged lines around it, so the
+ *  printed text is never built up as one string.  With more than one
+ *  file and more than one core, files are compared on a pool of one
+ *  thread per core.  Each is rendered into its own buffer and the
+ *  buffers are written out in path order; no more than twice as many
+ *  files as threads are in flight at once, so memory stays bounded
+ *  however many files changed.
+ *  @author Ishil Puri
+ */
+class UnifiedDiff {
+
+    /** Writes to OUT the differences of each of PATHS, taking its old
+     *  contents from OLD and its new contents from NEW, either of which
+     *  gives null for a file it does not have.
+     *  @param paths Paths of the files that differ, in order
+     *  @param old Old contents of each path
+     *  @param now New contents of each path
+     *  @param out Stream written
+     */
+    static void print(List<String> paths, Function<String, byte[]> old,
+                      Function<String, byte[]> now, OutputStream out)
+        throws IOException {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+                paths.size());
+        if (threads <= 1) {
+            for (String path : paths) {
+                write(path, old.apply(path), now.apply(path), out);
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+            for (String path : paths) {
+                if (pending.size() == 2 * threads) {
+                    out.write(pending.remove().get());
+                }
+                pending.add(pool.submit(() -> {
+                    ByteArrayOutputStream text = new ByteArrayOutputStream();
+                    write(path, old.apply(path), now.apply(path), text);
+                    return text.toByteArray();
+                }));
+            }
+            while (!pending.isEmpty()) {
+                out.write(pending.remove().get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw Utils.error("Cannot compare files.");
+        } catch (InterruptedException e) {
+            throw Utils.error("Diff interrupted.");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Writes to OUT the differences between A and B, the old and new
+     *  contents of the file at PATH, either of which is null if the file
+     *  does not exist in that version.
+     *  @param path Path of the file
+     *  @param a Old contents, or null
+     *  @param b New contents, or null
+     *  @param out Stream written
+     */
+    static void write(String path, byte[] a, byte[] b, OutputStream out)
+        throws IOException {
+        text(out, "diff --git a/" + path + " b/" + path + "\n");
+        if (a == null) {
+            text(out, "new file\n");
+        } else if (b == null) {
+            text(out, "deleted file\n");
+        }
+        if (binary(a) || binary(b)) {
+            text(out, "Binary files " + (a == null ? NULL : "a/" + path)
+                    + " and " + (b == null ? NULL : "b/" + path)
+                    + " differ\n");
+            return;
+        }
+        text(out, "--- " + (a == null ? NULL : "a/" + path) + "\n");
+        text(out, "+++ " + (b == null ? NULL : "b/" + path) + "\n");
+        Diff.Lines x = new Diff.Lines(a == null ? new byte[0] : a);
+        Diff.Lines y = new Diff.Lines(b == null ? new byte[0] : b);
+        List<Diff.Hunk> hunks = Diff.diff(x, y);
+        int k = 0;
+        while (k < hunks.size()) {
+            int last = k;
+            while (last + 1 < hunks.size() && hunks.get(last + 1).aStart()
+                    - hunks.get(last).aEnd() <= 2 * CONTEXT) {
+                last += 1;
+            }
+            Diff.Hunk first = hunks.get(k), end = hunks.get(last);
+            int aFrom = Math.max(0, first.aStart() - CONTEXT);
+            int aTo = Math.min(x.size(), end.aEnd() + CONTEXT);
+            int bFrom = first.bStart() - (first.aStart() - aFrom);
+            int bTo = end.bEnd() + (aTo - end.aEnd());
+            text(out, "@@ -" + range(aFrom, aTo) + " +" + range(bFrom, bTo)
+                    + " @@\n");
+            int pos = aFrom;
+            for (int i = k; i <= last; i += 1) {
+                Diff.Hunk h = hunks.get(i);
+                lines(x, pos, h.aStart(), SAME, out);
+                lines(x, h.aStart(), h.aEnd(), REMOVED, out);
+                lines(y, h.bStart(), h.bEnd(), ADDED, out);
+                pos = h.aEnd();
+            }
+            lines(x, pos, aTo, SAME, out);
+            k = last + 1;
+        }
+    }
+
+    /** Writes lines FROM to TO of V to OUT, each after PREFIX, noting if
+     *  the last of them has no newline.
+     *  @param v A version of a file
+     *  @param from First line
+     *  @param to Line just past the last
+     *  @param prefix Bytes written before each line
+     *  @param out Stream written
+     */
+    private static void lines(Diff.Lines v, int from, int to, byte[] prefix,
+                              OutputStream out) throws IOException {
+        v.write(out, from, to, prefix);
+        if (to > from && to == v.size() && v.unterminated()) {
+            text(out, "\n\\ No newline at end of file\n");
+        }
+    }
+
+    /** @return Lines FROM to TO as a hunk header gives them: the first
+     *  line counting from 1, or the line before an empty range, then
+     *  the number of lines unless it is 1
+     *  @param from First line, counting from 0
+     *  @param to Line just past the last
+     */
+    private static String range(int from, int to) {
+        int count = to - from;
+        if (count == 1) {
+            return Integer.toString(from + 1);
+        }
+        return (count == 0 ? from : from + 1) + "," + count;
+    }
+
+    /** @return Whether DATA looks like the contents of a binary file,
+     *  having a zero byte near its start
+     *  @param data Contents of a file, or null
+     */
+    private static boolean binary(byte[] data) {
+        if (data == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(data.length, BINARY_PROBE); i += 1) {
+            if (data[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes S to OUT as UTF-8.
+     *  @param out Stream written
+     *  @param s Text written
+     */
+    private static void text(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Bytes at the start of a file looked at for a zero byte. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** Name printed for the missing side of an added or deleted file. */
+    private static final String NULL = "/dev/null";
+
+    /** Prefix of an unchanged line. */
+    private static final byte[] SAME = {' '};
+
+    /** Prefix of a removed line. */
+    private static final byte[] REMOVED = {'-'};
+
+    /** Prefix of an added line. */
+    private static final byte[] ADDED = {'+'};
+}
@@ -1,5 +1,8 @@
 package gitlet;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -10,9 +13,16 @@ import static org.junit.Assert.*;
 public class UnitTest {
 
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
-     *  the arguments of runClasses to run other JUnit tests. */
-    public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+     *  the arguments of runClasses to run other JUnit tests.  They run in
+     *  a new temporary directory, since those that make repositories
+     *  delete the contents of the directory they run in. */
+    public static void main(String[] ignored) throws IOException {
+        File dir = Files.createTempDirectory("gitlet-unit").toFile();
+        new File(dir, TestRepo.MARKER).createNewFile();
+        System.setProperty("user.dir", dir.getPath());
+        System.exit(textui.runClasses(UnitTest.class, TreeTest.class,
+                DeltaTest.class, ObjectStoreTest.class, CommitTest.class,
+                DiffTest.class));
     }
 
     /** A dummy test to avoid complaint. */
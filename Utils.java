@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,8 +10,11 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -59,6 +63,87 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of the serialized form of a byte array
+     *  holding the contents of FILE, that is, sha1(serialize(readContents
+     *  (FILE))), without holding the contents in memory.  The file is
+     *  streamed through a reused direct buffer.  No array can hold a
+     *  file of 2 GB or more, so the length in the hashed header is then
+     *  the low 32 bits of its size.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static String sha1Contents(File file) {
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long size = ch.size();
+            Trace.count(Trace.Counter.FILES_HASHED, 1);
+            md.update(BYTE_ARRAY_HEADER);
+            md.update(ByteBuffer.allocate(4).putInt((int) size).flip());
+            ByteBuffer buf = HASH_BUFFER.get();
+            buf.clear();
+            while (ch.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+            return bytesToUid(md.digest(), 0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the SHA-1 hash of the serialized form of DATA, that is,
+     *  sha1(serialize(DATA)): the id a file holding DATA is stored
+     *  under. */
+    static String sha1Bytes(byte[] data) {
+        return sha1(BYTE_ARRAY_HEADER,
+                ByteBuffer.allocate(4).putInt(data.length).array(), data);
+    }
+
+    /** Serialized form of a byte array up to, but not including, its
+     *  length. */
+    private static final byte[] BYTE_ARRAY_HEADER;
+
+    static {
+        byte[] empty = serialize(new byte[0]);
+        BYTE_ARRAY_HEADER = Arrays.copyOf(empty, empty.length - 4);
+    }
+
+    /** Per-thread buffer that files are read through for hashing. */
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(64 << 10));
+
+    /** Returns the 20 raw bytes denoted by the hexadecimal UID, or null
+     *  if UID is not a complete, well-formed SHA-1 UID. */
+    static byte[] uidToBytes(String uid) {
+        if (uid == null || uid.length() != UID_LENGTH) {
+            return null;
+        }
+        byte[] result = new byte[UID_LENGTH / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(uid.charAt(2 * i), 16);
+            int lo = Character.digit(uid.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            result[i] = (byte) ((hi << 4) | lo);
+        }
+        return result;
+    }
+
+    /** Returns the hexadecimal UID of the 20 raw SHA-1 bytes in BYTES,
+     *  starting at index OFFSET. */
+    static String bytesToUid(byte[] bytes, int offset) {
+        char[] result = new char[UID_LENGTH];
+        for (int i = 0; i < UID_LENGTH / 2; i += 1) {
+            int b = bytes[offset + i] & 0xff;
+            result[2 * i] = Character.forDigit(b >>> 4, 16);
+            result[2 * i + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(result);
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -94,7 +179,9 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.count(Trace.Counter.FILE_BYTES_READ, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -119,14 +206,15 @@ class Utils {
             }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            long written = 0;
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                written += bytes.length;
             }
             str.close();
+            Trace.count(Trace.Counter.FILE_BYTES_WRITTEN, written);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -148,6 +236,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T decoded from the serialized bytes in
+     *  DATA, casting it to EXPECTEDCLASS.  Throws IllegalArgumentException
+     *  in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] data,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(data));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -169,6 +274,7 @@ class Utils {
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
         String[] files = dir.list(PLAIN_FILES);
+        Trace.count(Trace.Counter.DIRS_LISTED, 1);
         if (files == null) {
             return null;
         } else {
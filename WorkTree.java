@@ -0,0 +1,189 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Layout of files in a directory tree, such as the working directory
+ *  or the staging area, named by paths relative to its root that use
+ *  '/' between directory names.
+ *
+ *  Listing a tree forks one task per subdirectory on the common
+ *  fork-join pool, so large trees are read by every core at once.  Each
+ *  task sorts its own directory's names, with a subdirectory sorted as
+ *  its name followed by '/', so joining the results in order gives
+ *  every path in the same order as a sorted set of path strings.
+ *  @author Ishil Puri
+ */
+class WorkTree {
+
+    /** @return Sorted relative paths of every plain file under ROOT,
+     *  leaving out the repository's own .gitlet directory
+     *  @param root Directory walked
+     */
+    static List<String> files(File root) {
+        return ForkJoinPool.commonPool().invoke(new Walk(root, ""));
+    }
+
+    /** @return PATH, a file name given relative to the working directory,
+     *  as the normalized relative path it is tracked under
+     *  @param path File name as given by the user
+     */
+    static String relative(String path) {
+        Path root = Repository.CWD.toPath().toAbsolutePath().normalize();
+        Path p = root.resolve(path).normalize();
+        if (!p.startsWith(root) || p.equals(root)
+                || p.startsWith(root.resolve(GITLET))) {
+            throw Utils.error("File is outside the repository.");
+        }
+        StringBuilder result = new StringBuilder();
+        for (Path name : root.relativize(p)) {
+            if (result.length() > 0) {
+                result.append('/');
+            }
+            result.append(name);
+        }
+        return result.toString();
+    }
+
+    /** Writes CONTENTS to the file at PATH under ROOT, creating any
+     *  missing directories along the way.
+     *  @param root Root of the tree
+     *  @param path Relative path of the file
+     *  @param contents Bytes or String to write
+     */
+    static void write(File root, String path, Object... contents) {
+        File f = Utils.join(root, path);
+        File dir = f.getParentFile();
+        if (!dir.isDirectory()) {
+            dir.mkdirs();
+        }
+        Utils.writeContents(f, contents);
+    }
+
+    /** @return A buffered stream writing the file at PATH under ROOT,
+     *  which is created or truncated, along with any missing directories
+     *  @param root Root of the tree
+     *  @param path Relative path of the file
+     */
+    static OutputStream create(File root, String path) {
+        File f = Utils.join(root, path);
+        File dir = f.getParentFile();
+        if (!dir.isDirectory()) {
+            dir.mkdirs();
+        }
+        try {
+            return new BufferedOutputStream(Files.newOutputStream(
+                    f.toPath()), COPY_BUFFER);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies the contents of SOURCE to the file at PATH under ROOT,
+     *  without reading them into memory.
+     *  @param source File copied
+     *  @param root Root of the tree
+     *  @param path Relative path of the copy
+     */
+    static void copy(File source, File root, String path) {
+        File f = Utils.join(root, path);
+        File dir = f.getParentFile();
+        if (!dir.isDirectory()) {
+            dir.mkdirs();
+        }
+        try {
+            Files.copy(source.toPath(), f.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            long size = f.length();
+            Trace.count(Trace.Counter.FILE_BYTES_READ, size);
+            Trace.count(Trace.Counter.FILE_BYTES_WRITTEN, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Deletes the plain file at PATH under ROOT, then every directory
+     *  between it and ROOT that is left empty.
+     *  @param root Root of the tree
+     *  @param path Relative path of the file
+     *  @return Whether the file was deleted
+     */
+    static boolean delete(File root, String path) {
+        File f = Utils.join(root, path);
+        if (!f.isFile() || !f.delete()) {
+            return false;
+        }
+        for (File d = f.getParentFile(); !d.equals(root) && d.delete();
+             d = d.getParentFile()) {
+            continue;
+        }
+        return true;
+    }
+
+    /** Task listing the files under one directory. */
+    private static final class Walk extends RecursiveTask<List<String>> {
+        /** Creates a task listing DIR.
+         * @param dir Directory listed
+         * @param prefix Its path relative to the root, ending in '/', or ""
+         */
+        Walk(File dir, String prefix) {
+            _dir = dir;
+            _prefix = prefix;
+        }
+
+        @Override
+        protected List<String> compute() {
+            File[] entries = _dir.listFiles();
+            Trace.count(Trace.Counter.DIRS_LISTED, 1);
+            ArrayList<String> result = new ArrayList<>();
+            if (entries == null) {
+                return result;
+            }
+            String[] keys = new String[entries.length];
+            for (int i = 0; i < entries.length; i += 1) {
+                keys[i] = entries[i].getName()
+                        + (entries[i].isDirectory() ? "/" : "");
+            }
+            Arrays.sort(keys);
+            Walk[] subdirs = new Walk[keys.length];
+            for (int i = 0; i < keys.length; i += 1) {
+                if (keys[i].endsWith("/")
+                        && !(_prefix.isEmpty() && keys[i].equals(GITLET + "/"))) {
+                    subdirs[i] = new Walk(new File(_dir, keys[i]),
+                            _prefix + keys[i]);
+                    subdirs[i].fork();
+                }
+            }
+            for (int i = 0; i < keys.length; i += 1) {
+                if (subdirs[i] != null) {
+                    result.addAll(subdirs[i].join());
+                } else if (!keys[i].endsWith("/")) {
+                    result.add(_prefix + keys[i]);
+                }
+            }
+            return result;
+        }
+
+        /** Directory listed. */
+        private final File _dir;
+
+        /** Path of _dir relative to the root, ending in '/', or "". */
+        private final String _prefix;
+    }
+
+    /** Name of the repository directory, never listed. */
+    private static final String GITLET = ".gitlet";
+
+    /** Bytes buffered by streams made by create. */
+    private static final int COPY_BUFFER = 64 << 10;
+}
@@ -0,0 +1,29 @@
+package gitlet.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks with the GC profiler, so that allocation rates
+ *  are reported along with times.
+ *  Usage: java gitlet.bench.Benchmarks [JMH OPTIONS], for example
+ *  "-p files=100000 -p depth=1000 merge" to run only merge at that size.
+ *  @author Ishil Puri
+ */
+public class Benchmarks {
+
+    /** Runs the benchmarks selected by ARGS.
+     *  @param args JMH command-line options
+     */
+    public static void main(String... args)
+        throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(CommandBenchmarks.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,177 @@
+package gitlet.bench;
+
+import gitlet.Generator;
+import gitlet.Repository;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of each command against a generated repository.
+ *
+ *  Every trial runs in its own JVM, since Repository keeps its caches
+ *  in static fields, and builds a fresh fixture for its parameters.
+ *  Commands that change the repository are arranged to leave it as they
+ *  found it, or nearly so: add and commit change one file each time,
+ *  checkout and reset alternate between two states, and merge resets
+ *  master before each merge, outside the timed region.  What commands
+ *  print is discarded.
+ *  @author Ishil Puri
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CommandBenchmarks {
+
+    /** Number of files in the repository. */
+    @Param({"1000", "10000"})
+    public int files;
+
+    /** Bytes in each file. */
+    @Param({"4096"})
+    public int fileSize;
+
+    /** Number of commits on master. */
+    @Param({"10", "100"})
+    public int depth;
+
+    /** Builds the fixture and silences commands. */
+    @Setup(Level.Trial)
+    public void build() throws IOException {
+        _fixture = new Fixture(files, fileSize, depth, SEED);
+        _repo = _fixture.repo();
+        _out = System.out;
+        System.setOut(Fixture.QUIET);
+    }
+
+    /** Restores standard output. */
+    @TearDown(Level.Trial)
+    public void restore() {
+        System.setOut(_out);
+    }
+
+    /** Stages a changed file. */
+    @Benchmark
+    public void add() throws IOException {
+        String path = next();
+        _fixture.write(path);
+        _repo.add(path);
+        _repo.close();
+    }
+
+    /** Commits one changed file. */
+    @Benchmark
+    public void commit() throws IOException {
+        _fixture.change(1, "benchmark commit");
+        _repo.close();
+    }
+
+    /** Reports the status of an unchanged working tree. */
+    @Benchmark
+    public void status() {
+        _repo.status();
+        _repo.close();
+    }
+
+    /** Lists the history of master. */
+    @Benchmark
+    public void log() {
+        _repo.log();
+    }
+
+    /** Lists every commit. */
+    @Benchmark
+    public void globalLog() {
+        _repo.globalLog();
+    }
+
+    /** Finds commits by message. */
+    @Benchmark
+    public void find() {
+        _repo.find(new String[] {Generator.INITIAL_MESSAGE});
+    }
+
+    /** Switches to the other branch, then back on the next call. */
+    @Benchmark
+    public void checkout() {
+        _onOther = !_onOther;
+        _repo.checkout(new String[] {
+            _onOther ? Fixture.OTHER : Fixture.MASTER});
+        _repo.close();
+    }
+
+    /** Resets master to the split point, then back on the next call. */
+    @Benchmark
+    public void reset() {
+        _atSplit = !_atSplit;
+        _repo.reset(_atSplit ? _fixture.split() : _fixture.master());
+        _repo.close();
+    }
+
+    /** Merges the other branch into master.
+     *  @param rewound State putting master back before each call
+     */
+    @Benchmark
+    public void merge(Rewind rewound) throws IOException {
+        _repo.merge(Fixture.OTHER);
+        _repo.close();
+    }
+
+    /** @return Path of the file add changes next */
+    private String next() {
+        _next = (_next + 1) % _fixture.paths().size();
+        return _fixture.paths().get(_next);
+    }
+
+    /** State that puts master back where the fixture left it before
+     *  each call, so that every merge does the same work. */
+    @State(Scope.Benchmark)
+    public static class Rewind {
+        /** Resets master of the repository of BENCH.
+         *  @param bench Benchmark state holding the fixture
+         */
+        @Setup(Level.Invocation)
+        public void rewind(CommandBenchmarks bench) {
+            bench._repo.reset(bench._fixture.master());
+            bench._repo.close();
+        }
+    }
+
+    /** Seed of every fixture. */
+    private static final long SEED = 61;
+
+    /** Fixture of this trial. */
+    private Fixture _fixture;
+
+    /** Its repository. */
+    private Repository _repo;
+
+    /** Standard output before the trial. */
+    private PrintStream _out;
+
+    /** Index of the file add changes next. */
+    private int _next;
+
+    /** Whether checkout last switched to the other branch. */
+    private boolean _onOther;
+
+    /** Whether reset last moved master to the split point. */
+    private boolean _atSplit;
+}
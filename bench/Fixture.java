@@ -0,0 +1,171 @@
+package gitlet.bench;
+
+import gitlet.Generator;
+import gitlet.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Generated repository that benchmarks run against.
+ *
+ *  Repository works on the directory the JVM was started in, so a
+ *  fixture is built there, after everything in it is deleted.  To guard
+ *  against wiping the wrong directory, that directory must contain a
+ *  file named MARKER.  The history of master, DEPTH commits of FILES
+ *  files of SIZE bytes spread over directories of at most FANOUT
+ *  entries, each commit changing a few files, is made by Generator.
+ *  Then a branch "other" is made that shares all but its last commit
+ *  with master and changes a different set of files, so that checking
+ *  out or merging it has work to do.
+ *  @author Ishil Puri
+ */
+final class Fixture {
+
+    /** Builds a fixture in the current directory.
+     *  @param files Number of files
+     *  @param size Bytes in each file
+     *  @param depth Number of commits on master after the first
+     *  @param seed Seed of the file contents and changes
+     */
+    Fixture(int files, int size, int depth, long seed) throws IOException {
+        _root = new File(System.getProperty("user.dir"));
+        _size = size;
+        _random = new Random(seed);
+        clean();
+        PrintStream out = System.out;
+        System.setOut(QUIET);
+        try {
+            int perCommit = Math.max(1, files / CHANGED);
+            Generator gen = new Generator();
+            gen.set("seed", Long.toString(seed));
+            gen.set("files", Integer.toString(files));
+            gen.set("fanout", Integer.toString(FANOUT));
+            gen.set("size", Integer.toString(size));
+            gen.set("spread", "0");
+            gen.set("commits", Integer.toString(depth));
+            gen.set("changes", Integer.toString(perCommit));
+            _repo = gen.generate();
+            _paths = gen.paths();
+            _split = _repo.getHEAD();
+            _repo.branch(OTHER);
+            _repo.checkout(new String[] {OTHER});
+            change(perCommit, "other work");
+            _other = _repo.getHEAD();
+            _repo.checkout(new String[] {MASTER});
+            change(perCommit, "master work");
+            _master = _repo.getHEAD();
+            _repo.close();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /** @return The repository */
+    Repository repo() {
+        return _repo;
+    }
+
+    /** @return Paths of the files, in the order they were made */
+    List<String> paths() {
+        return _paths;
+    }
+
+    /** @return Id of the last commit master and other share */
+    String split() {
+        return _split;
+    }
+
+    /** @return Id of the head of master as built */
+    String master() {
+        return _master;
+    }
+
+    /** @return Id of the head of other as built */
+    String other() {
+        return _other;
+    }
+
+    /** Gives the file at PATH new random contents.
+     *  @param path Path of the file
+     */
+    void write(String path) throws IOException {
+        byte[] data = new byte[_size];
+        _random.nextBytes(data);
+        Path p = new File(_root, path).toPath();
+        Files.createDirectories(p.getParent());
+        Files.write(p, data);
+    }
+
+    /** Changes N random files and commits them with MESSAGE.
+     *  @param n Number of files changed
+     *  @param message Commit message
+     */
+    void change(int n, String message) throws IOException {
+        for (int k = 0; k < n; k += 1) {
+            String path = _paths.get(_random.nextInt(_paths.size()));
+            write(path);
+            _repo.add(path);
+        }
+        _repo.commit(message);
+    }
+
+    /** Deletes everything in the current directory but MARKER. */
+    private void clean() throws IOException {
+        if (!new File(_root, MARKER).isFile()) {
+            throw new IllegalStateException("Benchmarks delete the contents of"
+                    + " the directory they run in; run them in a scratch"
+                    + " directory holding a file named " + MARKER + ".");
+        }
+        try (Stream<Path> all = Files.walk(_root.toPath())) {
+            all.sorted(Comparator.reverseOrder())
+                    .filter(p -> !p.equals(_root.toPath())
+                            && !p.getFileName().toString().equals(MARKER))
+                    .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Name of the file marking a directory benchmarks may wipe. */
+    static final String MARKER = ".gitlet-bench";
+
+    /** Name of the main branch. */
+    static final String MASTER = "master";
+
+    /** Name of the second branch. */
+    static final String OTHER = "other";
+
+    /** Stream that discards what commands print. */
+    static final PrintStream QUIET =
+            new PrintStream(OutputStream.nullOutputStream());
+
+    /** Most entries in one generated directory. */
+    private static final int FANOUT = 32;
+
+    /** Reciprocal of the share of files each commit changes. */
+    private static final int CHANGED = 100;
+
+    /** Directory the repository is in. */
+    private final File _root;
+
+    /** Bytes in each file. */
+    private final int _size;
+
+    /** Source of file contents and of the files changed. */
+    private final Random _random;
+
+    /** The repository. */
+    private final Repository _repo;
+
+    /** Paths of the files. */
+    private final List<String> _paths;
+
+    /** Ids of the split point and of the branch heads as built. */
+    private String _split, _master, _other;
+}